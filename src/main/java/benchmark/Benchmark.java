@@ -0,0 +1,485 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.rmi.NotBoundException;
+import java.rmi.registry.LocateRegistry;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import server.ServerInfo;
+import server.master.MasterServer;
+import server.master.MasterService;
+import server.slave.SlaveServer;
+import utility.Broadcast;
+import utility.Task;
+
+/**
+ * Benchmark - Start N slave JVMs and a master on localhost, drive synthetic
+ * workloads through the master and record the throughput, the latency
+ * percentiles and the scaling efficiency as slaves are added. Every result is
+ * written as one JSON object per line, so the runs could be compared to track
+ * regressions.
+ *
+ * Command Line arguments: [key=value ...], the list values are separated by
+ * comma. See {@link #DEFAULTS} for the keys.
+ *
+ * @author yu
+ *
+ */
+public class Benchmark {
+	/** the host of all the servers */
+	private static final String HOST = "127.0.0.1";
+
+	/** the max time to wait for a server to start */
+	private static final long STARTUP_TIMEOUT_MILLIS = 30000;
+
+	/** the interval to check whether a server has started */
+	private static final long POLL_MILLIS = 200;
+
+	/** the name of the master */
+	private static final String MASTER_NAME = "BenchMaster";
+
+	/** the default options */
+	private static final Map<String, String> DEFAULTS = new LinkedHashMap<String, String>();
+
+	static {
+		// the numbers of slaves to run, the first one is the baseline of the
+		// scaling efficiency
+		DEFAULTS.put("slaves", "1,2,4");
+		// the number of sub tasks in each job
+		DEFAULTS.put("subTasks", "100,1000");
+		// the size of the request and the result of each sub task
+		DEFAULTS.put("payload", "64");
+		// the compute time of each sub task in microseconds
+		DEFAULTS.put("computeMicros", "0,200");
+		// the number of jobs submitted at the same time
+		DEFAULTS.put("concurrency", "1,4");
+		// the number of measured jobs for each workload
+		DEFAULTS.put("jobs", "10");
+		// the number of jobs to warm up before measuring
+		DEFAULTS.put("warmup", "2");
+		// the port of the master, the slaves use the following ports
+		DEFAULTS.put("basePort", "19100");
+		// the result file, one JSON object per line
+		DEFAULTS.put("output", "bench_results.jsonl");
+		// the directory of the logs and working directories of the servers
+		DEFAULTS.put("logDir", "bench_logs");
+	}
+
+	/** the options */
+	private final Map<String, String> options;
+
+	/**
+	 * Construct a benchmark
+	 *
+	 * @param options
+	 *            the options
+	 */
+	public Benchmark(Map<String, String> options) {
+		this.options = options;
+	}
+
+	/**
+	 * The main entry to run the benchmark
+	 *
+	 * @param args
+	 *            the arguments in the form of key=value
+	 * @throws IOException
+	 *             if a server could not be started
+	 * @throws NotBoundException
+	 *             if the master is not found
+	 */
+	public static void main(String[] args) throws IOException, NotBoundException {
+		Map<String, String> options = new LinkedHashMap<String, String>(DEFAULTS);
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (eq <= 0 || !DEFAULTS.containsKey(arg.substring(0, eq))) {
+				throw new IllegalArgumentException(
+						"[ERROR] Benchmark argument should be key=value with key in " + DEFAULTS.keySet() + ", " + arg);
+			}
+			options.put(arg.substring(0, eq), arg.substring(eq + 1));
+		}
+		new Benchmark(options).run();
+	}
+
+	/**
+	 * Run all the workloads with every number of slaves and write the
+	 * results. Each result is appended as soon as it is measured, so the
+	 * results are kept even if a later number of slaves fails.
+	 *
+	 * @throws IOException
+	 *             if a server could not be started
+	 * @throws NotBoundException
+	 *             if the master is not found
+	 */
+	public void run() throws IOException, NotBoundException {
+		File logDir = new File(options.get("logDir"));
+		if (!logDir.exists()) {
+			logDir.mkdirs();
+		}
+		int basePort = Integer.parseInt(options.get("basePort"));
+		List<Result> results = new ArrayList<Result>();
+
+		try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(options.get("output")),
+				StandardCharsets.UTF_8)) {
+			for (long slaveCount : parseList("slaves")) {
+				runWithSlaves((int) slaveCount, basePort, logDir, results, writer);
+			}
+		}
+		System.out.println("[INFO ] Benchmark results are written to " + options.get("output"));
+	}
+
+	/**
+	 * Helper function to start the servers with the number of slaves and run
+	 * all the workloads
+	 *
+	 * @param slaveCount
+	 *            the number of slaves
+	 * @param basePort
+	 *            the port of the master
+	 * @param logDir
+	 *            the directory of the logs
+	 * @param results
+	 *            the results recorded before, to compute the scaling
+	 *            efficiency
+	 * @param writer
+	 *            the writer of the results
+	 * @throws IOException
+	 *             if a server could not be started
+	 * @throws NotBoundException
+	 *             if the master is not found
+	 */
+	private void runWithSlaves(int slaveCount, int basePort, File logDir, List<Result> results, BufferedWriter writer)
+			throws IOException, NotBoundException {
+		List<Process> processes = new ArrayList<Process>();
+		try {
+			// start the slaves, then the master
+			StringBuilder slaves = new StringBuilder();
+			for (int i = 1; i <= slaveCount; i++) {
+				ServerInfo slave = new ServerInfo("BenchSlave" + i, HOST, basePort + i);
+				processes.add(startServer("server.slave.SlaveServer", slave, logDir, null));
+				waitForServer(slave);
+				slaves.append(i == 1 ? "" : ",").append(slave);
+			}
+			ServerInfo masterInfo = new ServerInfo(MASTER_NAME, HOST, basePort);
+			processes.add(startServer("server.master.MasterServer", masterInfo, logDir, slaves.toString()));
+			MasterService master = waitForServer(masterInfo);
+			System.out.println("[INFO ] Benchmark starts with " + slaveCount + " slaves.");
+
+			for (long subTasks : parseList("subTasks")) {
+				for (long payload : parseList("payload")) {
+					for (long computeMicros : parseList("computeMicros")) {
+						for (long concurrency : parseList("concurrency")) {
+							Result result = runWorkload(master, slaveCount, (int) subTasks, (int) payload,
+									computeMicros, (int) concurrency);
+							computeScalingEfficiency(result, results);
+							results.add(result);
+							System.out.println(result.toJson());
+							writer.write(result.toJson());
+							writer.newLine();
+							writer.flush();
+						}
+					}
+				}
+			}
+		} finally {
+			for (Process process : processes) {
+				process.destroy();
+			}
+			for (Process process : processes) {
+				try {
+					process.waitFor();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper function to run one workload and measure it
+	 *
+	 * @param master
+	 *            the master
+	 * @param slaveCount
+	 *            the number of slaves
+	 * @param subTasks
+	 *            the number of sub tasks in each job
+	 * @param payload
+	 *            the size of the request and the result of each sub task
+	 * @param computeMicros
+	 *            the compute time of each sub task
+	 * @param concurrency
+	 *            the number of jobs submitted at the same time
+	 * @return the result
+	 * @throws IOException
+	 *             if a job failed
+	 */
+	private Result runWorkload(MasterService master, int slaveCount, int subTasks, int payload, long computeMicros,
+			int concurrency) throws IOException {
+		// the same task is submitted by every job, it is copied by RMI anyway
+		Broadcast workload = master.broadcast(SyntheticWorkload.BROADCAST_NAME,
+				new SyntheticWorkload(computeMicros, payload));
+		Task.Builder builder = new Task.Builder();
+		builder.setTaskName("bench-" + subTasks + "-" + payload + "-" + computeMicros);
+		builder.addBroadcast(workload);
+		char[] padding = new char[payload];
+		Arrays.fill(padding, 'x');
+		for (int i = 0; i < subTasks; i++) {
+			String request = Integer.toString(i) + ":" + new String(padding);
+			builder.addSubTask(request.substring(0, Math.max(payload, Integer.toString(i).length() + 1)));
+		}
+		Task task = builder.build();
+
+		for (int i = 0; i < Integer.parseInt(options.get("warmup")); i++) {
+			master.submitTask(task);
+		}
+
+		int jobs = Integer.parseInt(options.get("jobs"));
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		try {
+			List<Callable<Long>> callables = new ArrayList<Callable<Long>>();
+			for (int i = 0; i < jobs; i++) {
+				callables.add(new Callable<Long>() {
+					@Override
+					public Long call() throws Exception {
+						long start = System.nanoTime();
+						master.submitTask(task);
+						return System.nanoTime() - start;
+					}
+				});
+			}
+			long start = System.nanoTime();
+			List<Future<Long>> futures = executor.invokeAll(callables);
+			long[] latencies = new long[jobs];
+			for (int i = 0; i < jobs; i++) {
+				latencies[i] = futures.get(i).get();
+			}
+			long wallNanos = System.nanoTime() - start;
+			return new Result(slaveCount, subTasks, payload, computeMicros, concurrency, jobs, wallNanos, latencies);
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IOException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Helper function to compute the scaling efficiency of a result against
+	 * the recorded result of the same workload with the first number of
+	 * slaves, or against itself if it is the first one
+	 *
+	 * @param result
+	 *            the result
+	 * @param recorded
+	 *            the results recorded before
+	 */
+	private void computeScalingEfficiency(Result result, List<Result> recorded) {
+		Result baseline = result;
+		for (Result previous : recorded) {
+			if (previous.sameWorkload(result)) {
+				baseline = previous;
+				break;
+			}
+		}
+		double speedup = result.getThroughput() / baseline.getThroughput();
+		result.scalingEfficiency = speedup * baseline.slaveCount / result.slaveCount;
+	}
+
+	/**
+	 * Helper function to start a server in a new JVM
+	 *
+	 * @param mainClass
+	 *            the main class of the server
+	 * @param info
+	 *            the server info
+	 * @param logDir
+	 *            the directory of the log and the working directory
+	 * @param slaves
+	 *            the slaves of the master, null for a slave
+	 * @return the process
+	 * @throws IOException
+	 *             if the JVM could not be started
+	 */
+	private Process startServer(String mainClass, ServerInfo info, File logDir, String slaves) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		if (slaves != null) {
+			command.add("-D" + MasterServer.SLAVES_PROPERTY + "=" + slaves);
+		} else {
+			command.add("-D" + SlaveServer.FUNCTION_PROPERTY + "=" + SyntheticFunction.class.getName());
+		}
+		command.add(mainClass);
+		command.add(info.getServiceName());
+		command.add(info.getHostName());
+		command.add(Integer.toString(info.getPort()));
+		File log = new File(logDir, info.getServiceName() + ".log");
+		return new ProcessBuilder(command).directory(logDir).redirectErrorStream(true)
+				.redirectOutput(ProcessBuilder.Redirect.to(log)).start();
+	}
+
+	/**
+	 * Helper function to wait until a server is bound in its registry
+	 *
+	 * @param info
+	 *            the server info
+	 * @return the stub of the server
+	 * @throws IOException
+	 *             if the server has not started before the timeout
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T waitForServer(ServerInfo info) throws IOException {
+		long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+		while (true) {
+			try {
+				return (T) LocateRegistry.getRegistry(info.getHostName(), info.getPort())
+						.lookup(info.getServiceName());
+			} catch (IOException | NotBoundException e) {
+				if (System.currentTimeMillis() > deadline) {
+					throw new IOException("[ERROR] Server " + info + " has not started.", e);
+				}
+			}
+			try {
+				Thread.sleep(POLL_MILLIS);
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Helper function to parse a list option
+	 *
+	 * @param key
+	 *            the key
+	 * @return the values
+	 */
+	private List<Long> parseList(String key) {
+		List<Long> values = new ArrayList<Long>();
+		for (String value : options.get(key).split(",")) {
+			values.add(Long.parseLong(value.trim()));
+		}
+		return values;
+	}
+
+	/**
+	 * Result - The measurement of one workload
+	 */
+	private static class Result {
+		/** the nanoseconds in a millisecond */
+		private static final double NANOS_PER_MILLI = 1e6;
+
+		/** the time the workload is measured */
+		private final String timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date());
+
+		/** the number of slaves */
+		private final int slaveCount;
+
+		/** the number of sub tasks in each job */
+		private final int subTasks;
+
+		/** the size of the request and the result of each sub task */
+		private final int payload;
+
+		/** the compute time of each sub task */
+		private final long computeMicros;
+
+		/** the number of jobs submitted at the same time */
+		private final int concurrency;
+
+		/** the number of measured jobs */
+		private final int jobs;
+
+		/** the time to finish all the jobs */
+		private final long wallNanos;
+
+		/** the sorted latencies of the jobs */
+		private final long[] latencies;
+
+		/** the scaling efficiency against the baseline number of slaves */
+		private double scalingEfficiency = Double.NaN;
+
+		/**
+		 * Construct a result
+		 */
+		Result(int slaveCount, int subTasks, int payload, long computeMicros, int concurrency, int jobs,
+				long wallNanos, long[] latencies) {
+			this.slaveCount = slaveCount;
+			this.subTasks = subTasks;
+			this.payload = payload;
+			this.computeMicros = computeMicros;
+			this.concurrency = concurrency;
+			this.jobs = jobs;
+			this.wallNanos = wallNanos;
+			this.latencies = latencies.clone();
+			Arrays.sort(this.latencies);
+		}
+
+		/**
+		 * Whether the other result is measured with the same workload
+		 */
+		boolean sameWorkload(Result other) {
+			return subTasks == other.subTasks && payload == other.payload && computeMicros == other.computeMicros
+					&& concurrency == other.concurrency;
+		}
+
+		/**
+		 * The throughput in sub tasks per second
+		 */
+		double getThroughput() {
+			return (double) jobs * subTasks * 1e9 / wallNanos;
+		}
+
+		/**
+		 * The latency percentile in milliseconds, by the nearest rank
+		 */
+		double getLatency(double percentile) {
+			int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+			return latencies[Math.max(0, rank - 1)] / NANOS_PER_MILLI;
+		}
+
+		/**
+		 * Format the result as a JSON object
+		 */
+		String toJson() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("{\"timestamp\":\"").append(timestamp)
+					.append("\",\"slaves\":").append(slaveCount).append(",\"subTasks\":").append(subTasks)
+					.append(",\"payload\":").append(payload).append(",\"computeMicros\":").append(computeMicros)
+					.append(",\"concurrency\":").append(concurrency).append(",\"jobs\":").append(jobs)
+					.append(",\"wallMillis\":").append(format(wallNanos / NANOS_PER_MILLI))
+					.append(",\"jobsPerSecond\":").append(format(jobs * 1e9 / wallNanos))
+					.append(",\"subTasksPerSecond\":").append(format(getThroughput()))
+					.append(",\"latencyMillis\":{\"p50\":").append(format(getLatency(50))).append(",\"p90\":")
+					.append(format(getLatency(90))).append(",\"p99\":").append(format(getLatency(99)))
+					.append(",\"max\":").append(format(getLatency(100))).append("},\"scalingEfficiency\":")
+					.append(Double.isNaN(scalingEfficiency) ? "null" : format(scalingEfficiency)).append("}");
+			return sb.toString();
+		}
+
+		/**
+		 * Format a number with 3 decimals
+		 */
+		private static String format(double value) {
+			return String.format(Locale.ROOT, "%.3f", value);
+		}
+	}
+}
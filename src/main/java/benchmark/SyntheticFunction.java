@@ -0,0 +1,25 @@
+package benchmark;
+
+import java.util.Map;
+
+import server.slave.SlaveFunction;
+
+/**
+ * SyntheticFunction - The slave function of the benchmark. It runs the
+ * {@link SyntheticWorkload} broadcast with the task, so the benchmark measures
+ * the cluster rather than the real function.
+ *
+ * @author yu
+ *
+ */
+public class SyntheticFunction implements SlaveFunction {
+	@Override
+	public String apply(String request, Map<String, Object> sideInputs) {
+		Object workload = sideInputs.get(SyntheticWorkload.BROADCAST_NAME);
+		if (!(workload instanceof SyntheticWorkload)) {
+			throw new IllegalArgumentException(
+					"[ERROR] Synthetic function requires the broadcast " + SyntheticWorkload.BROADCAST_NAME + ".");
+		}
+		return ((SyntheticWorkload) workload).run(request);
+	}
+}
@@ -0,0 +1,79 @@
+package benchmark;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * SyntheticWorkload - The cost of a synthetic sub task used by the benchmark.
+ * It is broadcast to the slaves under {@link #BROADCAST_NAME}, and the
+ * {@link SyntheticFunction} of the slaves then spends the given compute time
+ * and returns a result of the given size for every sub task.
+ *
+ * @author yu
+ *
+ */
+public class SyntheticWorkload implements Serializable {
+	/** version UID by default */
+	private static final long serialVersionUID = 1L;
+
+	/** the broadcast name to reference the workload from a task */
+	public static final String BROADCAST_NAME = "syntheticWorkload";
+
+	/** the compute time of each sub task in microseconds */
+	private final long computeMicros;
+
+	/** the size of the result of each sub task in characters */
+	private final int resultSize;
+
+	/**
+	 * Construct a synthetic workload
+	 *
+	 * @param computeMicros
+	 *            the compute time of each sub task in microseconds
+	 * @param resultSize
+	 *            the size of the result of each sub task in characters
+	 */
+	public SyntheticWorkload(long computeMicros, int resultSize) {
+		if (computeMicros < 0 || resultSize < 0) {
+			throw new IllegalArgumentException("[ERROR] Synthetic workload requires non negative cost.");
+		}
+		this.computeMicros = computeMicros;
+		this.resultSize = resultSize;
+	}
+
+	/**
+	 * Getter for compute time
+	 *
+	 * @return compute time in microseconds
+	 */
+	public long getComputeMicros() {
+		return computeMicros;
+	}
+
+	/**
+	 * Getter for result size
+	 *
+	 * @return result size in characters
+	 */
+	public int getResultSize() {
+		return resultSize;
+	}
+
+	/**
+	 * Run the synthetic sub task. The CPU is kept busy for the compute time.
+	 *
+	 * @param request
+	 *            the sub task request
+	 * @return the result
+	 */
+	public String run(String request) {
+		long deadline = System.nanoTime() + computeMicros * 1000;
+		long h = request.hashCode();
+		while (System.nanoTime() < deadline) {
+			h = h * 31 + 17;
+		}
+		char[] result = new char[resultSize];
+		Arrays.fill(result, (char) ('a' + (h & 0xf)));
+		return new String(result);
+	}
+}
@@ -65,6 +65,28 @@ public class ServerInfo implements Serializable {
 		return port;
 	}
 
+	/**
+	 * Parse a server info in the form of name@host:port
+	 * 
+	 * @param text
+	 *            the text
+	 * @return the server info
+	 */
+	public static ServerInfo parse(String text) {
+		int at = text.indexOf('@');
+		int colon = text.lastIndexOf(':');
+		if (at <= 0 || colon <= at + 1 || colon == text.length() - 1) {
+			throw new IllegalArgumentException("[ERROR] Server info should be in the form of name@host:port, " + text);
+		}
+		return new ServerInfo(text.substring(0, at), text.substring(at + 1, colon),
+				Integer.parseInt(text.substring(colon + 1)));
+	}
+
+	@Override
+	public String toString() {
+		return serviceName + "@" + hostName + ":" + port;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o)
@@ -1,17 +1,36 @@
 package server.client;
 
 import java.io.*;
+import java.nio.file.Paths;
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
 import java.rmi.NotBoundException;
 import java.rmi.registry.LocateRegistry;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import server.ServerInfo;
 import server.master.MasterService;
+import utility.ConsistentHash;
+import utility.JobSnapshot;
 import utility.Task;
 
 /**
  * ClientServer - The client will send the task to master
- * 
+ *
  * @author yu
  *
  */
@@ -19,12 +38,75 @@ public class ClientServer implements ClientService {
 	/** the max number of tasks */
 	private final static int MAX_SUBTASKS = 100;
 
+	/** the number of threads to submit the tasks asynchronously */
+	private final static int NUM_THREAD = 8;
+
+	/** the max number of tasks submitted by submitAll but not finished */
+	private final static int MAX_IN_FLIGHT = 2 * NUM_THREAD;
+
+	/** the max time of one long poll of a subscription */
+	private final static long SUBSCRIBE_POLL_MILLIS = 10000;
+
 	/** the master info */
 	private final static ServerInfo MASTERINFO = new ServerInfo("Master", "127.0.0.1", 19091);
 
+	/** the master info of this client, any master could be used to discover the others */
+	private final ServerInfo masterInfo;
+
+	/** the sink of the results, print to System.out if null */
+	private final ResultSink resultSink;
+
+	/** the hash ring of all the masters, null before discovered */
+	private volatile ConsistentHash<ServerInfo> masterRing;
+
+	/** the cached stubs of the masters */
+	private final Map<ServerInfo, MasterService> masterServices = new ConcurrentHashMap<ServerInfo, MasterService>();
+
+	/** the factory of the client threads */
+	private final static ThreadFactory DAEMON_FACTORY = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			// do not keep the client alive after the main thread finishes
+			Thread thread = new Thread(r, "client-worker");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	/** the executor of the asynchronous submissions */
+	private final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREAD, DAEMON_FACTORY);
+
+	/** the executor of the subscriptions, each of them keeps a thread */
+	private final ExecutorService subscriptionExecutor = Executors.newCachedThreadPool(DAEMON_FACTORY);
+
+	/** the executor of submitAll, each of them keeps a thread to take the tasks */
+	private final ExecutorService iterationExecutor = Executors.newCachedThreadPool(DAEMON_FACTORY);
+
+	/**
+	 * Construct a client printing the results to System.out
+	 */
+	public ClientServer() {
+		this(MASTERINFO, null);
+	}
+
+	/**
+	 * Construct a client
+	 *
+	 * @param masterInfo
+	 *            the master info
+	 * @param resultSink
+	 *            the sink of the results, print to System.out if null
+	 */
+	public ClientServer(ServerInfo masterInfo, ResultSink resultSink) {
+		this.masterInfo = masterInfo;
+		this.resultSink = resultSink;
+	}
+
 	/**
 	 * The main entry to build and submit the task to the master
-	 * 
+	 *
+	 * Command Line arguments: [result file]
+	 *
 	 * @param args
 	 *            the arguments
 	 * @throws IOException
@@ -33,14 +115,29 @@ public class ClientServer implements ClientService {
 	 *             if not found
 	 */
 	public static void main(String[] args) throws IOException, NotBoundException {
-		// create a service
-		ClientService clientService = new ClientServer();
-		Task taskRequest = clientService.buildTask();
+		if (args.length == 0) {
+			// create a service
+			ClientService clientService = new ClientServer();
+			Task taskRequest = clientService.buildTask();
 
-		// submit the task
-		System.out.println("[INFO ] Client begin to submit the task to the master.");
-		clientService.sendToMaster(taskRequest);
+			// submit the task
+			System.out.println("[INFO ] Client begin to submit the task to the master.");
+			clientService.sendToMaster(taskRequest);
+			return;
+		}
 
+		// submit the tasks asynchronously and write the results to the file
+		try (ResultSink resultSink = new ResultSink(Paths.get(args[0]))) {
+			ClientService clientService = new ClientServer(MASTERINFO, resultSink);
+			Iterator<Task> taskRequests = new LazyTaskBuilder("Simulate a simple task",
+					IntStream.range(0, MAX_SUBTASKS).mapToObj(i -> "task" + Integer.toString(i)), MAX_SUBTASKS / 4);
+			System.out.println("[INFO ] Client begin to submit the tasks to the master.");
+			int finished = clientService.submitAll(taskRequests).join();
+			System.out.println("[INFO ] All the " + finished + " tasks are finished. The results are written to "
+					+ args[0]);
+		} catch (CompletionException e) {
+			throw new IOException(e.getCause());
+		}
 	}
 
 	@Override
@@ -56,9 +153,11 @@ public class ClientServer implements ClientService {
 
 	@Override
 	public Task sendToMaster(Task taskRequest) throws NotBoundException, IOException {
-		MasterService masterService = (MasterService) LocateRegistry
-				.getRegistry(MASTERINFO.getHostName(), MASTERINFO.getPort()).lookup(MASTERINFO.getServiceName());
-		Task task = masterService.submitTask(taskRequest);
+		Task task = submit(taskRequest);
+		if (resultSink != null) {
+			resultSink.write(task);
+			return task;
+		}
 		System.out.println(
 				"[INFO ] All the " + task.getSize() + " sub tasks are finished. The results are listed as following:");
 		for (Map.Entry<String, String> e : task.getSubTasks().entrySet()) {
@@ -66,4 +165,181 @@ public class ClientServer implements ClientService {
 		}
 		return task;
 	}
+
+	@Override
+	public CompletableFuture<Task> submitAsync(Task taskRequest) {
+		CompletableFuture<Task> future = new CompletableFuture<Task>();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					future.complete(sendToMaster(taskRequest));
+				} catch (NotBoundException | IOException | RuntimeException e) {
+					future.completeExceptionally(e);
+				}
+			}
+		});
+		return future;
+	}
+
+	@Override
+	public CompletableFuture<Integer> submitAll(Iterator<Task> taskRequests) {
+		CompletableFuture<Integer> all = new CompletableFuture<Integer>();
+		iterationExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+				AtomicInteger finished = new AtomicInteger();
+				AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+				try {
+					while (error.get() == null && taskRequests.hasNext()) {
+						// wait before building the next task if too many are
+						// not finished
+						inFlight.acquire();
+						// the result is consumed by the sink, keep no reference
+						submitAsync(taskRequests.next()).whenComplete((task, e) -> {
+							if (e != null) {
+								error.compareAndSet(null, e);
+							} else {
+								finished.incrementAndGet();
+							}
+							inFlight.release();
+						});
+					}
+					// wait for the tasks in flight
+					inFlight.acquire(MAX_IN_FLIGHT);
+				} catch (InterruptedException | RuntimeException e) {
+					error.compareAndSet(null, e);
+				}
+				if (error.get() != null) {
+					all.completeExceptionally(error.get());
+				} else {
+					all.complete(finished.get());
+				}
+			}
+		});
+		return all;
+	}
+
+	@Override
+	public void registerJob(Task job) throws NotBoundException, IOException {
+		getRoutedMaster(job.getTaskName()).registerJob(job);
+	}
+
+	@Override
+	public int appendToJob(Task delta) throws NotBoundException, IOException {
+		return getRoutedMaster(delta.getTaskName()).appendSubTasks(delta);
+	}
+
+	@Override
+	public JobSnapshot getJobResult(String jobName) throws NotBoundException, IOException {
+		return getRoutedMaster(jobName).getJobResult(jobName, 0);
+	}
+
+	@Override
+	public Future<?> subscribe(String jobName, Consumer<JobSnapshot> listener) {
+		return subscriptionExecutor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				long version = 0;
+				while (!Thread.currentThread().isInterrupted()) {
+					// long poll, returns as soon as the next micro batch finishes
+					JobSnapshot snapshot = getRoutedMaster(jobName).awaitJobResult(jobName, version,
+							SUBSCRIBE_POLL_MILLIS);
+					if (snapshot.getVersion() > version || snapshot.isFailed()) {
+						version = snapshot.getVersion();
+						listener.accept(snapshot);
+					}
+					if (snapshot.isClosed() || snapshot.isFailed()) {
+						break;
+					}
+				}
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public JobSnapshot closeJob(String jobName) throws NotBoundException, IOException {
+		return getRoutedMaster(jobName).closeJob(jobName);
+	}
+
+	/**
+	 * Helper function to get the master the task or job is routed to
+	 *
+	 * @param name
+	 *            the task or job name
+	 * @return the stub
+	 * @throws NotBoundException
+	 *             if not found
+	 * @throws IOException
+	 */
+	private MasterService getRoutedMaster(String name) throws NotBoundException, IOException {
+		return getMasterService(getMasterRing().get(name));
+	}
+
+	/**
+	 * Helper function to submit the task to the master it is routed to, with
+	 * the cached stub of the master. The stub is looked up again once if the
+	 * master has been restarted.
+	 *
+	 * @param taskRequest
+	 *            the task request
+	 * @return the task with the result
+	 * @throws NotBoundException
+	 *             if not found
+	 * @throws IOException
+	 */
+	private Task submit(Task taskRequest) throws NotBoundException, IOException {
+		ServerInfo owner = getMasterRing().get(taskRequest.getTaskName());
+		try {
+			return getMasterService(owner).submitTask(taskRequest);
+		} catch (ConnectException | NoSuchObjectException e) {
+			// the call never reached the master, so it is safe to submit again
+			masterServices.remove(owner);
+			return getMasterService(owner).submitTask(taskRequest);
+		}
+	}
+
+	/**
+	 * Helper function to discover all the masters from the configured master
+	 *
+	 * @return the hash ring of the masters
+	 * @throws NotBoundException
+	 *             if not found
+	 * @throws IOException
+	 */
+	private ConsistentHash<ServerInfo> getMasterRing() throws NotBoundException, IOException {
+		ConsistentHash<ServerInfo> ring = masterRing;
+		if (ring == null) {
+			synchronized (this) {
+				ring = masterRing;
+				if (ring == null) {
+					ring = new ConsistentHash<ServerInfo>(getMasterService(masterInfo).getMasters());
+					masterRing = ring;
+				}
+			}
+		}
+		return ring;
+	}
+
+	/**
+	 * Helper function to get the cached stub of a master
+	 *
+	 * @param info
+	 *            the master info
+	 * @return the stub
+	 * @throws NotBoundException
+	 *             if not found
+	 * @throws IOException
+	 */
+	private MasterService getMasterService(ServerInfo info) throws NotBoundException, IOException {
+		MasterService stub = masterServices.get(info);
+		if (stub == null) {
+			stub = (MasterService) LocateRegistry.getRegistry(info.getHostName(), info.getPort())
+					.lookup(info.getServiceName());
+			masterServices.put(info, stub);
+		}
+		return stub;
+	}
 }
@@ -3,7 +3,12 @@ package server.client;
 import java.io.IOException;
 import java.rmi.NotBoundException;
 import java.rmi.Remote;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
+import utility.JobSnapshot;
 import utility.Task;
 
 /**
@@ -32,4 +37,91 @@ public interface ClientService extends Remote {
 	 * @throws IOException
 	 */
 	Task sendToMaster(Task taskRequest) throws NotBoundException, IOException;
+
+	/**
+	 * Send the task to master without waiting for the result
+	 * 
+	 * @param taskRequest
+	 *            the task request
+	 * @return the future of the task with the result
+	 */
+	CompletableFuture<Task> submitAsync(Task taskRequest);
+
+	/**
+	 * Send all the tasks to master without waiting for the results. The tasks
+	 * are taken from the iterator one by one in the background, so a
+	 * {@link LazyTaskBuilder} only builds a task when it is submitted. The
+	 * result of each task is handed to the result sink (or System.out) and
+	 * then dropped, so only the tasks in flight are kept in memory. No more
+	 * task is taken after a task fails.
+	 * 
+	 * @param taskRequests
+	 *            the task requests
+	 * @return the future of the number of finished tasks, completed when all
+	 *         the tasks are finished
+	 */
+	CompletableFuture<Integer> submitAll(Iterator<Task> taskRequests);
+
+	/**
+	 * Register a continuous job on its master
+	 * 
+	 * @param job
+	 *            the job named by the task name, with the broadcast handles
+	 *            and the initial sub tasks
+	 * @throws NotBoundException
+	 *             if not found
+	 * @throws IOException
+	 */
+	void registerJob(Task job) throws NotBoundException, IOException;
+
+	/**
+	 * Append the sub tasks to a continuous job
+	 * 
+	 * @param delta
+	 *            the sub tasks named by the job name
+	 * @return the number of appended sub tasks
+	 * @throws NotBoundException
+	 *             if not found
+	 * @throws IOException
+	 */
+	int appendToJob(Task delta) throws NotBoundException, IOException;
+
+	/**
+	 * Poll the whole aggregate of a continuous job
+	 * 
+	 * @param jobName
+	 *            the job name
+	 * @return the snapshot
+	 * @throws NotBoundException
+	 *             if not found
+	 * @throws IOException
+	 */
+	JobSnapshot getJobResult(String jobName) throws NotBoundException, IOException;
+
+	/**
+	 * Subscribe to a continuous job. The listener receives the results added
+	 * by every micro batch, until the job is closed or the subscription is
+	 * cancelled. If the job fails, the listener receives the failed snapshot
+	 * last.
+	 * 
+	 * @param jobName
+	 *            the job name
+	 * @param listener
+	 *            the listener of the snapshots
+	 * @return the subscription, cancel it to stop
+	 */
+	Future<?> subscribe(String jobName, Consumer<JobSnapshot> listener);
+
+	/**
+	 * Close a continuous job. The running micro batch is waited for, so its
+	 * results are in the aggregate.
+	 * 
+	 * @param jobName
+	 *            the job name
+	 * @return the whole aggregate
+	 * @throws NotBoundException
+	 *             if not found
+	 * @throws IOException
+	 */
+	JobSnapshot closeJob(String jobName) throws NotBoundException, IOException;
 }
@@ -0,0 +1,99 @@
+package server.client;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import utility.Broadcast;
+import utility.Task;
+
+/**
+ * LazyTaskBuilder - Build the tasks lazily from an {@link Iterator} or
+ * {@link Stream} of sub task requests. Only one task of at most the batch size
+ * is held in memory at a time, so a large job could be submitted while its
+ * requests are still being produced.
+ *
+ * @author yu
+ *
+ */
+public class LazyTaskBuilder implements Iterator<Task> {
+	/** the task name, each task is named with an index after it */
+	private final String taskName;
+
+	/** the sub task requests */
+	private final Iterator<String> requests;
+
+	/** the max number of sub tasks in each task */
+	private final int batchSize;
+
+	/** the builder */
+	private final Task.Builder builder = new Task.Builder();
+
+	/** the broadcast handles added to every task */
+	private final Broadcast[] broadcasts;
+
+	/** the index of the next task */
+	private int index;
+
+	/**
+	 * Construct a lazy builder from an iterator
+	 *
+	 * @param taskName
+	 *            the task name
+	 * @param requests
+	 *            the sub task requests
+	 * @param batchSize
+	 *            the max number of sub tasks in each task
+	 * @param broadcasts
+	 *            the broadcast handles added to every task
+	 */
+	public LazyTaskBuilder(String taskName, Iterator<String> requests, int batchSize, Broadcast... broadcasts) {
+		if (taskName == null || taskName.length() == 0) {
+			throw new IllegalArgumentException("[ERROR] Task name is null or empty. Please give the task name properly.");
+		}
+		if (requests == null || batchSize <= 0) {
+			throw new IllegalArgumentException("[ERROR] Lazy builder requires the requests and a positive batch size.");
+		}
+		this.taskName = taskName;
+		this.requests = requests;
+		this.batchSize = batchSize;
+		this.broadcasts = broadcasts;
+	}
+
+	/**
+	 * Construct a lazy builder from a stream
+	 *
+	 * @param taskName
+	 *            the task name
+	 * @param requests
+	 *            the sub task requests
+	 * @param batchSize
+	 *            the max number of sub tasks in each task
+	 * @param broadcasts
+	 *            the broadcast handles added to every task
+	 */
+	public LazyTaskBuilder(String taskName, Stream<String> requests, int batchSize, Broadcast... broadcasts) {
+		this(taskName, requests.iterator(), batchSize, broadcasts);
+	}
+
+	@Override
+	public boolean hasNext() {
+		return requests.hasNext();
+	}
+
+	@Override
+	public Task next() {
+		if (!requests.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		builder.setTaskName(taskName + Integer.toString(index));
+		for (Broadcast broadcast : broadcasts) {
+			builder.addBroadcast(broadcast);
+		}
+		for (int i = 0; i < batchSize && requests.hasNext(); i++) {
+			builder.addSubTask(requests.next());
+		}
+		index++;
+		return builder.build();
+	}
+}
@@ -0,0 +1,76 @@
+package server.client;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import utility.Task;
+
+/**
+ * ResultSink - Write the results of the finished tasks into a file with a
+ * buffered NIO writer, instead of printing every line to System.out. It is
+ * safe to write from the threads completing the asynchronous submissions.
+ *
+ * @author yu
+ *
+ */
+public class ResultSink implements Closeable {
+	/** the buffer size of the writer */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** the writer */
+	private final BufferedWriter writer;
+
+	/**
+	 * Construct a sink writing to the given file. The file is created or
+	 * truncated.
+	 *
+	 * @param path
+	 *            the file
+	 * @throws IOException
+	 *             if the file could not be opened
+	 */
+	public ResultSink(Path path) throws IOException {
+		this.writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+	/**
+	 * Write all the results of a task
+	 *
+	 * @param task
+	 *            the finished task
+	 * @throws IOException
+	 *             if the write failed
+	 */
+	public synchronized void write(Task task) throws IOException {
+		for (Map.Entry<String, String> e : task.getSubTasks().entrySet()) {
+			writer.write("Request : ");
+			writer.write(e.getKey());
+			writer.write(", Result: ");
+			writer.write(String.valueOf(e.getValue()));
+			writer.newLine();
+		}
+	}
+
+	/**
+	 * Flush the buffered results to the file
+	 *
+	 * @throws IOException
+	 *             if the flush failed
+	 */
+	public synchronized void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+}
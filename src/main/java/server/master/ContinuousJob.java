@@ -0,0 +1,290 @@
+package server.master;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import utility.Broadcast;
+import utility.JobSnapshot;
+import utility.Task;
+
+/**
+ * ContinuousJob - The state of a continuous job on the {@link MasterServer}.
+ * The sub tasks appended by the client wait in the pending queue until the
+ * next micro batch, and the results of every micro batch are appended to the
+ * aggregate without touching the earlier results. A failed micro batch is
+ * dispatched again with a backoff, and the job fails after
+ * {@link #MAX_FAILURES} failures in a row.
+ *
+ * @author yu
+ *
+ */
+class ContinuousJob {
+	/** the delay before dispatching a failed micro batch again */
+	static final long RETRY_MILLIS = 200;
+
+	/** the max delay before dispatching a failed micro batch again */
+	static final long MAX_RETRY_MILLIS = 10000;
+
+	/** the number of failures in a row after which the job fails */
+	static final int MAX_FAILURES = 5;
+
+	/** the job name */
+	private final String jobName;
+
+	/** the broadcast handles added to every micro batch */
+	private final List<Broadcast> broadcasts;
+
+	/** all the sub task requests ever appended, to skip the duplicates */
+	private final Set<String> requests = new HashSet<String>();
+
+	/** the sub task requests not dispatched yet */
+	private final Deque<String> pending = new ArrayDeque<String>();
+
+	/** the sub task requests of the aggregate, in the order they finished */
+	private final List<String> resultRequests = new ArrayList<String>();
+
+	/** the results of the aggregate, in the same order */
+	private final List<String> resultValues = new ArrayList<String>();
+
+	/** the size of the aggregate after each version */
+	private final List<Integer> versionSizes = new ArrayList<Integer>();
+
+	/** the number of sub tasks in the running micro batch */
+	private int running;
+
+	/** the number of failed micro batches in a row */
+	private int failures;
+
+	/** the time the failed micro batch could be dispatched again */
+	private long retryTime;
+
+	/** the error of the last failed micro batch once the job failed */
+	private String error;
+
+	/** whether the job is closing, no micro batch is dispatched anymore */
+	private boolean closing;
+
+	/** whether the job has been closed */
+	private boolean closed;
+
+	/** the time the job was closed in milliseconds */
+	private long closedTime;
+
+	/**
+	 * Construct a continuous job
+	 *
+	 * @param jobName
+	 *            the job name
+	 * @param broadcasts
+	 *            the broadcast handles
+	 */
+	ContinuousJob(String jobName, List<Broadcast> broadcasts) {
+		this.jobName = jobName;
+		this.broadcasts = new ArrayList<Broadcast>(broadcasts);
+		this.versionSizes.add(0);
+	}
+
+	/**
+	 * Append the sub tasks to the pending queue. The requests appended before
+	 * are skipped.
+	 *
+	 * @param subTasks
+	 *            the sub task requests
+	 * @return the number of appended sub tasks
+	 */
+	synchronized int append(Collection<String> subTasks) {
+		if (closing) {
+			throw new IllegalStateException("[ERROR] Continuous job " + jobName + " has been closed.");
+		}
+		if (error != null) {
+			throw new IllegalStateException("[ERROR] Continuous job " + jobName + " has failed: " + error);
+		}
+		int count = 0;
+		for (String request : subTasks) {
+			if (requests.add(request)) {
+				pending.add(request);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Take all the pending sub tasks as the next micro batch. Only one micro
+	 * batch of the job runs at a time, and a failed micro batch waits for its
+	 * backoff.
+	 *
+	 * @param now
+	 *            the current time in milliseconds
+	 * @return the micro batch, null if there is nothing to dispatch
+	 */
+	synchronized Task nextMicroBatch(long now) {
+		if (closing || error != null || running > 0 || pending.isEmpty() || now < retryTime) {
+			return null;
+		}
+		Task.Builder builder = new Task.Builder();
+		builder.setTaskName(jobName + "#" + Long.toString(getVersion() + 1));
+		for (Broadcast broadcast : broadcasts) {
+			builder.addBroadcast(broadcast);
+		}
+		while (!pending.isEmpty()) {
+			builder.addSubTask(pending.poll());
+		}
+		Task microBatch = builder.build();
+		running = microBatch.getSize();
+		return microBatch;
+	}
+
+	/**
+	 * Append the results of the finished micro batch to the aggregate and wake
+	 * up the subscribers
+	 *
+	 * @param results
+	 *            the results
+	 */
+	synchronized void complete(Task results) {
+		for (Map.Entry<String, String> e : results.getSubTasks().entrySet()) {
+			resultRequests.add(e.getKey());
+			resultValues.add(e.getValue());
+		}
+		versionSizes.add(resultRequests.size());
+		running = 0;
+		failures = 0;
+		notifyAll();
+	}
+
+	/**
+	 * Put the sub tasks of the failed micro batch back to the front of the
+	 * pending queue, so they are dispatched again in the next micro batch
+	 * after a backoff doubled by every failure in a row. The job fails after
+	 * {@link #MAX_FAILURES} failures in a row.
+	 *
+	 * @param microBatch
+	 *            the micro batch
+	 * @param cause
+	 *            the description of the failure
+	 * @param now
+	 *            the current time in milliseconds
+	 * @return true if the micro batch will be dispatched again
+	 */
+	synchronized boolean fail(Task microBatch, String cause, long now) {
+		List<String> failed = new ArrayList<String>(microBatch.getSubTasks().keySet());
+		for (int i = failed.size() - 1; i >= 0; i--) {
+			pending.addFirst(failed.get(i));
+		}
+		running = 0;
+		failures++;
+		if (failures >= MAX_FAILURES) {
+			error = cause;
+		} else {
+			retryTime = now + Math.min(RETRY_MILLIS << (failures - 1), MAX_RETRY_MILLIS);
+		}
+		notifyAll();
+		return error == null;
+	}
+
+	/**
+	 * Close the job. No micro batch is dispatched anymore, and the running one
+	 * is waited for, so its results are in the aggregate. Then wake up the
+	 * subscribers.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	synchronized void close() throws InterruptedException {
+		closing = true;
+		while (running > 0) {
+			wait();
+		}
+		if (!closed) {
+			closed = true;
+			closedTime = System.currentTimeMillis();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Getter for the job name
+	 *
+	 * @return job name
+	 */
+	String getJobName() {
+		return jobName;
+	}
+
+	/**
+	 * Whether the job has been closed
+	 *
+	 * @return true if closed
+	 */
+	synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Whether the job was closed before the time
+	 *
+	 * @param time
+	 *            the time in milliseconds
+	 * @return true if closed before
+	 */
+	synchronized boolean isClosedBefore(long time) {
+		return closed && closedTime < time;
+	}
+
+	/**
+	 * Get the results added after the version
+	 *
+	 * @param fromVersion
+	 *            the version, 0 for the whole aggregate
+	 * @return the snapshot
+	 */
+	synchronized JobSnapshot snapshot(long fromVersion) {
+		long version = getVersion();
+		long from = Math.max(0, Math.min(fromVersion, version));
+		Task.Builder builder = new Task.Builder();
+		builder.setTaskName(jobName);
+		for (int i = versionSizes.get((int) from); i < resultRequests.size(); i++) {
+			builder.addSubTaskResult(resultRequests.get(i), resultValues.get(i));
+		}
+		return new JobSnapshot(from, version, builder.build(), pending.size() + running, closed, error);
+	}
+
+	/**
+	 * Wait until a micro batch after the version finishes, the job is closed
+	 * or failed, or the timeout elapses, then get the results added after the
+	 * version
+	 *
+	 * @param afterVersion
+	 *            the version known by the subscriber
+	 * @param timeoutMillis
+	 *            the max time to wait
+	 * @return the snapshot
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	synchronized JobSnapshot await(long afterVersion, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		long remaining = timeoutMillis;
+		while (getVersion() <= afterVersion && !closed && error == null && remaining > 0) {
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return snapshot(afterVersion);
+	}
+
+	/**
+	 * Helper function to get the current version
+	 *
+	 * @return the version
+	 */
+	private long getVersion() {
+		return versionSizes.size() - 1;
+	}
+}
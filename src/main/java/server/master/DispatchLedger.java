@@ -0,0 +1,119 @@
+package server.master;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import utility.Lease;
+import utility.SlaveStatus;
+
+/**
+ * DispatchLedger - The number of sub tasks the {@link MasterServer} has
+ * dispatched to each slave but not got back. The capacity of a slave is
+ * reserved when a split task is planned and released when its result or
+ * rejection is back, so the tasks mapped at the same time do not spend the
+ * same capacity. Hold the lock of the ledger to plan and reserve at once.
+ *
+ * @author yu
+ *
+ * @param <K>
+ *            the type of the slaves
+ */
+class DispatchLedger<K> {
+	/** the sub tasks in flight, by slave */
+	private final Map<K, Integer> inFlight = new HashMap<K, Integer>();
+
+	/**
+	 * The number of sub tasks which could be dispatched to the slave now. The
+	 * lease limits the sub tasks in flight from this master, and the queue
+	 * limit of the slave limits them together with the queue reported by the
+	 * slave, which also holds the sub tasks of the other masters.
+	 *
+	 * @param slave
+	 *            the slave
+	 * @param lease
+	 *            the lease of the slave, null if none
+	 * @param status
+	 *            the latest load report of the slave
+	 * @param now
+	 *            the current time in milliseconds
+	 * @return the capacity, 0 if none
+	 */
+	synchronized int getCapacity(K slave, Lease lease, SlaveStatus status, long now) {
+		if (lease == null || lease.isExpired(now) || status.isOverloaded()) {
+			return 0;
+		}
+		int own = getInFlight(slave);
+		// the reported queue includes the sub tasks of this master admitted
+		// by the slave, so do not count them twice
+		int load = Math.max(own, status.getQueueDepth());
+		return Math.max(0, Math.min(lease.getSlots() - own, status.getQueueLimit() - load));
+	}
+
+	/**
+	 * Reserve the capacity of a split task
+	 *
+	 * @param slave
+	 *            the slave
+	 * @param size
+	 *            the number of sub tasks
+	 */
+	synchronized void reserve(K slave, int size) {
+		inFlight.put(slave, getInFlight(slave) + size);
+	}
+
+	/**
+	 * Give back the capacity of a split task once its result or rejection is
+	 * back, and wake up the waiting tasks
+	 *
+	 * @param slave
+	 *            the slave
+	 * @param size
+	 *            the number of sub tasks
+	 */
+	synchronized void release(K slave, int size) {
+		int remaining = getInFlight(slave) - size;
+		if (remaining > 0) {
+			inFlight.put(slave, remaining);
+		} else {
+			inFlight.remove(slave);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * The number of sub tasks in flight to the slave
+	 *
+	 * @param slave
+	 *            the slave
+	 * @return the number of sub tasks
+	 */
+	synchronized int getInFlight(K slave) {
+		Integer count = inFlight.get(slave);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * The number of sub tasks in flight to all the slaves
+	 *
+	 * @return the number of sub tasks
+	 */
+	synchronized int getTotalInFlight() {
+		int total = 0;
+		for (int count : inFlight.values()) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * Wait until some capacity is released or the timeout elapses
+	 *
+	 * @param timeoutMillis
+	 *            the max time to wait
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	synchronized void await(long timeoutMillis) throws InterruptedException {
+		wait(timeoutMillis);
+	}
+}
@@ -0,0 +1,104 @@
+package server.master;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import utility.JobSnapshot;
+
+/**
+ * JobRegistry - The continuous jobs routed to the {@link MasterServer}, by job
+ * name. A closed job is kept for a retention period, so a subscriber polling
+ * again after the job is closed receives the closed snapshot instead of an
+ * unknown job.
+ *
+ * @author yu
+ *
+ */
+class JobRegistry {
+	/** how long a closed job is kept */
+	private final long retentionMillis;
+
+	/** the jobs, by job name */
+	private final Map<String, ContinuousJob> jobs = new ConcurrentHashMap<String, ContinuousJob>();
+
+	/**
+	 * Construct a registry
+	 *
+	 * @param retentionMillis
+	 *            how long a closed job is kept
+	 */
+	JobRegistry(long retentionMillis) {
+		this.retentionMillis = retentionMillis;
+	}
+
+	/**
+	 * Register a job. A closed job of the same name is replaced.
+	 *
+	 * @param continuousJob
+	 *            the job
+	 */
+	synchronized void register(ContinuousJob continuousJob) {
+		ContinuousJob previous = jobs.get(continuousJob.getJobName());
+		if (previous != null && !previous.isClosed()) {
+			throw new IllegalArgumentException(
+					"[ERROR] Continuous job " + continuousJob.getJobName() + " is registered.");
+		}
+		jobs.put(continuousJob.getJobName(), continuousJob);
+	}
+
+	/**
+	 * Get a registered job, or a closed one within the retention period
+	 *
+	 * @param jobName
+	 *            the job name
+	 * @return the job
+	 */
+	ContinuousJob get(String jobName) {
+		ContinuousJob continuousJob = jobs.get(jobName);
+		if (continuousJob == null) {
+			throw new IllegalArgumentException("[ERROR] Continuous job " + jobName + " is not registered.");
+		}
+		return continuousJob;
+	}
+
+	/**
+	 * Close a job and wait for its running micro batch. The job is kept for
+	 * the retention period.
+	 *
+	 * @param jobName
+	 *            the job name
+	 * @return the whole aggregate
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	JobSnapshot close(String jobName) throws InterruptedException {
+		ContinuousJob continuousJob = get(jobName);
+		continuousJob.close();
+		return continuousJob.snapshot(0);
+	}
+
+	/**
+	 * Getter for the jobs
+	 *
+	 * @return the jobs, including the closed ones
+	 */
+	Collection<ContinuousJob> getJobs() {
+		return jobs.values();
+	}
+
+	/**
+	 * Remove the jobs closed longer than the retention period
+	 *
+	 * @param now
+	 *            the current time in milliseconds
+	 */
+	synchronized void removeRetired(long now) {
+		for (Iterator<ContinuousJob> it = jobs.values().iterator(); it.hasNext();) {
+			if (it.next().isClosedBefore(now - retentionMillis)) {
+				it.remove();
+			}
+		}
+	}
+}
@@ -2,9 +2,9 @@ package server.master;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.rmi.AlreadyBoundException;
 import java.rmi.NotBoundException;
-import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
@@ -13,7 +13,14 @@ import java.util.*;
 import java.util.concurrent.*;
 
 import server.ServerInfo;
+import server.slave.BroadcastMissingException;
+import server.slave.SlaveOverloadedException;
 import server.slave.SlaveService;
+import utility.Broadcast;
+import utility.ConsistentHash;
+import utility.JobSnapshot;
+import utility.Lease;
+import utility.SlaveStatus;
 import utility.Task;
 
 
@@ -34,6 +41,36 @@ public class MasterServer implements MasterService {
 	/** the length of the required arguments */
 	private static final int ARGS_LENGTH = 3;
 
+	/** the system property of the slaves, in the form of name@host:port,... */
+	public static final String SLAVES_PROPERTY = "slaves";
+
+	/** the interval of the heartbeat to the slaves */
+	private static final long HEARTBEAT_SECONDS = 5;
+
+	/** the interval to check the slaves again when all of them are overloaded */
+	private static final long WAIT_MILLIS = 200;
+
+	/** the max time to wait for an overloaded cluster */
+	private static final long MAX_WAIT_MILLIS = 60000;
+
+	/** the interval of the micro batches of the continuous jobs */
+	private static final long MICRO_BATCH_MILLIS = 200;
+
+	/** the max time a subscriber waits for a continuous job in one call */
+	private static final long MAX_AWAIT_MILLIS = 30000;
+
+	/**
+	 * how long a closed job is kept, so its subscribers polling again receive
+	 * the closed snapshot
+	 */
+	private static final long CLOSED_JOB_MILLIS = 2 * MAX_AWAIT_MILLIS;
+
+	/** the duration of the leases on the slaves, renewed by the heartbeat */
+	private static final long LEASE_MILLIS = 3 * TimeUnit.SECONDS.toMillis(HEARTBEAT_SECONDS);
+
+	/** how long an idle master keeps its leases before giving them back */
+	private static final long LEASE_IDLE_MILLIS = 2 * TimeUnit.SECONDS.toMillis(HEARTBEAT_SECONDS);
+
 	/** service name */
 	private final String serviceName;
 
@@ -52,6 +89,63 @@ public class MasterServer implements MasterService {
 	/** the slaves */
 	private final List<SlaveService> slaveServices;
 
+	/** the latest load report of each slave */
+	private final Map<SlaveService, SlaveStatus> slaveStatuses = new ConcurrentHashMap<SlaveService, SlaveStatus>();
+
+	/** the sub tasks dispatched to each slave but not got back */
+	private final DispatchLedger<SlaveService> ledger = new DispatchLedger<SlaveService>();
+
+	/** the heartbeat scheduler */
+	private final ScheduledExecutorService heartbeatExecutor = Executors.newSingleThreadScheduledExecutor();
+
+	/**
+	 * the micro batch scheduler, apart from the heartbeat so a slow heartbeat
+	 * does not delay the micro batches
+	 */
+	private final ScheduledExecutorService microBatchExecutor = Executors.newSingleThreadScheduledExecutor();
+
+	/** the info of this master */
+	private final ServerInfo masterInfo;
+
+	/** the hash ring of all the masters to route the tasks by name */
+	private final ConsistentHash<ServerInfo> masterRing;
+
+	/** the cached stubs of the other masters */
+	private final Map<ServerInfo, MasterService> masterServices = new ConcurrentHashMap<ServerInfo, MasterService>();
+
+	/** the leases of the shared slaves held by this master */
+	private final Map<SlaveService, Lease> leases = new ConcurrentHashMap<SlaveService, Lease>();
+
+	/**
+	 * the lock to count the active tasks and acquire or release the leases at
+	 * once, so the leases are never released under a starting task
+	 */
+	private final Object leaseLock = new Object();
+
+	/**
+	 * the number of tasks being mapped, the leases are released when idle for
+	 * {@link #LEASE_IDLE_MILLIS}, guarded by the lease lock
+	 */
+	private int activeTasks;
+
+	/** the time the last task finished, guarded by the lease lock */
+	private long idleSince;
+
+	/** the content of the broadcast values shipped by this master, by hash */
+	private final Map<String, byte[]> broadcastContents = new ConcurrentHashMap<String, byte[]>();
+
+	/**
+	 * the number of handles of each broadcast value not removed yet, by hash,
+	 * guarded by itself
+	 */
+	private final Map<String, Integer> broadcastReferences = new HashMap<String, Integer>();
+
+	/** the continuous jobs routed to this master */
+	private final JobRegistry jobs = new JobRegistry(CLOSED_JOB_MILLIS);
+
+	/** the executor of the micro batches, apart from the map executor */
+	private final ExecutorService jobExecutor = Executors.newCachedThreadPool();
+
 	/**
 	 * Construct a master server
 	 * 
@@ -63,18 +157,49 @@ public class MasterServer implements MasterService {
 	 *            the port number
 	 * @param rootPath
 	 *            the root path
-	 * @throws RemoteException
+	 * @throws IOException
 	 *             if not found
 	 * @throws NotBoundException
 	 *             if not found
 	 */
 	public MasterServer(String serviceName, String hostName, int port, String rootPath)
-			throws RemoteException, NotBoundException {
+			throws IOException, NotBoundException {
+		this(serviceName, hostName, port, rootPath, Collections.<ServerInfo>emptyList());
+	}
+
+	/**
+	 * Construct a master server sharing the slaves with other masters. The
+	 * tasks are routed to the masters by consistent hashing of the task name,
+	 * so every master must be given the same peers.
+	 * 
+	 * @param serviceName
+	 *            the name
+	 * @param hostName
+	 *            the host name, ip
+	 * @param port
+	 *            the port number
+	 * @param rootPath
+	 *            the root path
+	 * @param peers
+	 *            the other masters
+	 * @throws IOException
+	 *             if not found
+	 * @throws NotBoundException
+	 *             if not found
+	 */
+	public MasterServer(String serviceName, String hostName, int port, String rootPath, List<ServerInfo> peers)
+			throws IOException, NotBoundException {
 		this.serviceName = serviceName;
 		this.hostName = hostName;
 		this.port = port;
 		this.rootDirectory = new File(rootPath);
 
+		// masters
+		this.masterInfo = new ServerInfo(serviceName, hostName, port);
+		List<ServerInfo> masters = new ArrayList<ServerInfo>(peers);
+		masters.add(masterInfo);
+		this.masterRing = new ConsistentHash<ServerInfo>(masters);
+
 		// if the directory is not there, create one
 		if (!rootDirectory.exists()) {
 			rootDirectory.mkdir();
@@ -82,29 +207,62 @@ public class MasterServer implements MasterService {
 
 		// slaves
 		this.slaveServices = new ArrayList<SlaveService>();
-		// hard coded here
-		loadSlaveServers(new ServerInfo("Slave1", "127.0.0.1", 19092));
-		loadSlaveServers(new ServerInfo("Slave2", "127.0.0.1", 19093));
+		// hard coded here, unless the slaves are given by the system property
+		String slaves = System.getProperty(SLAVES_PROPERTY);
+		if (slaves == null || slaves.trim().length() == 0) {
+			loadSlaveServers(new ServerInfo("Slave1", "127.0.0.1", 19092));
+			loadSlaveServers(new ServerInfo("Slave2", "127.0.0.1", 19093));
+		} else {
+			for (String slave : slaves.split(",")) {
+				loadSlaveServers(ServerInfo.parse(slave.trim()));
+			}
+		}
+
+		heartbeatExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				heartbeat();
+			}
+		}, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+		microBatchExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				dispatchMicroBatches();
+			}
+		}, MICRO_BATCH_MILLIS, MICRO_BATCH_MILLIS, TimeUnit.MILLISECONDS);
 	}
 
 	/**
 	 * Helper function to load the slave servers
 	 * 
 	 * @param slaveServerInfo
-	 * @throws RemoteException
+	 * @throws IOException
 	 * @throws NotBoundException
 	 */
-	private void loadSlaveServers(ServerInfo slaveServerInfo) throws RemoteException, NotBoundException {
+	private void loadSlaveServers(ServerInfo slaveServerInfo) throws IOException, NotBoundException {
 		Registry registry = LocateRegistry.getRegistry(slaveServerInfo.getHostName(), slaveServerInfo.getPort());
 		SlaveService slaveService = (SlaveService) registry.lookup(slaveServerInfo.getServiceName());
+		slaveStatuses.put(slaveService, slaveService.getStatus());
 		slaveServices.add(slaveService);
 	}
 
 	@Override
 	public Task submitTask(Task task) throws IOException {
+		return submitTask(task, false);
+	}
+
+	@Override
+	public Task submitTask(Task task, boolean forwarded) throws IOException {
 		if (task == null || task.getSize() == 0) {
 			throw new IllegalArgumentException("[ERROR] Empty task is send to master server.");
 		}
+		MasterService owner = getForwardTarget(task.getTaskName(), forwarded);
+		if (owner != null) {
+			// the client did not route the task, forward it to its master
+			System.out.println("[INFO ] Forward the task " + task.getTaskName() + " to the master "
+					+ locateMaster(task.getTaskName()));
+			return owner.submitTask(task, true);
+		}
 		StringBuilder sb = new StringBuilder();
 		sb.append("[INFO ] Receive a remote task. \n").append("Task Name: ").append(task.getTaskName())
 				.append(" Sub Tasks Size: ").append(task.getSize()).append(" .Receive Time: ")
@@ -112,95 +270,658 @@ public class MasterServer implements MasterService {
 		System.out.println(sb.toString());
 
 		// map and reduce
-		List<Task> results = map(task);
-		return reduce(results);
+		List<Task> results = mapWithLeases(task);
+		return reduce(task, results);
+
+	}
+
+	@Override
+	public void registerJob(Task job) throws IOException {
+		registerJob(job, false);
+	}
+
+	@Override
+	public void registerJob(Task job, boolean forwarded) throws IOException {
+		if (job == null) {
+			throw new IllegalArgumentException("[ERROR] Empty job is registered to master server.");
+		}
+		MasterService owner = getForwardTarget(job.getTaskName(), forwarded);
+		if (owner != null) {
+			owner.registerJob(job, true);
+			return;
+		}
+		ContinuousJob continuousJob = new ContinuousJob(job.getTaskName(), job.getBroadcasts());
+		jobs.register(continuousJob);
+		continuousJob.append(job.getSubTasks().keySet());
+		System.out.println("[INFO ] Register the continuous job " + job.getTaskName() + " with " + job.getSize()
+				+ " sub tasks.");
+	}
+
+	@Override
+	public int appendSubTasks(Task delta) throws IOException {
+		return appendSubTasks(delta, false);
+	}
+
+	@Override
+	public int appendSubTasks(Task delta, boolean forwarded) throws IOException {
+		if (delta == null) {
+			throw new IllegalArgumentException("[ERROR] Empty delta is appended to master server.");
+		}
+		MasterService owner = getForwardTarget(delta.getTaskName(), forwarded);
+		if (owner != null) {
+			return owner.appendSubTasks(delta, true);
+		}
+		return getJob(delta.getTaskName()).append(delta.getSubTasks().keySet());
+	}
+
+	@Override
+	public JobSnapshot getJobResult(String jobName, long fromVersion) throws IOException {
+		return getJobResult(jobName, fromVersion, false);
+	}
+
+	@Override
+	public JobSnapshot getJobResult(String jobName, long fromVersion, boolean forwarded) throws IOException {
+		MasterService owner = getForwardTarget(jobName, forwarded);
+		if (owner != null) {
+			return owner.getJobResult(jobName, fromVersion, true);
+		}
+		return getJob(jobName).snapshot(fromVersion);
+	}
+
+	@Override
+	public JobSnapshot awaitJobResult(String jobName, long afterVersion, long timeoutMillis) throws IOException {
+		return awaitJobResult(jobName, afterVersion, timeoutMillis, false);
+	}
+
+	@Override
+	public JobSnapshot awaitJobResult(String jobName, long afterVersion, long timeoutMillis, boolean forwarded)
+			throws IOException {
+		MasterService owner = getForwardTarget(jobName, forwarded);
+		if (owner != null) {
+			return owner.awaitJobResult(jobName, afterVersion, timeoutMillis, true);
+		}
+		try {
+			return getJob(jobName).await(afterVersion, Math.min(timeoutMillis, MAX_AWAIT_MILLIS));
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public JobSnapshot closeJob(String jobName) throws IOException {
+		return closeJob(jobName, false);
+	}
+
+	@Override
+	public JobSnapshot closeJob(String jobName, boolean forwarded) throws IOException {
+		MasterService owner = getForwardTarget(jobName, forwarded);
+		if (owner != null) {
+			return owner.closeJob(jobName, true);
+		}
+		JobSnapshot snapshot;
+		try {
+			// wait for the running micro batch, so its results are not lost
+			snapshot = jobs.close(jobName);
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+		System.out.println("[INFO ] Close the continuous job " + jobName);
+		return snapshot;
+	}
+
+	/**
+	 * Helper function to find the master to forward a task or job call to. A
+	 * call is forwarded at most once: a forwarded call routed to yet another
+	 * master means the masters were started with different rings.
+	 * 
+	 * @param name
+	 *            the task or job name
+	 * @param forwarded
+	 *            whether the call is forwarded by another master
+	 * @return the stub of the owner, null if this master owns the name
+	 * @throws IOException
+	 *             if the owner is not found
+	 */
+	private MasterService getForwardTarget(String name, boolean forwarded) throws IOException {
+		ServerInfo owner = route(masterRing, masterInfo, name, forwarded);
+		return owner == null ? null : getMasterService(owner);
+	}
+
+	/**
+	 * Helper function to route a task or job call by the ring of a master
+	 * 
+	 * @param ring
+	 *            the ring of the master
+	 * @param self
+	 *            the master
+	 * @param name
+	 *            the task or job name
+	 * @param forwarded
+	 *            whether the call is forwarded by another master
+	 * @return the master to forward the call to, null if the master owns the
+	 *         name
+	 * @throws IllegalStateException
+	 *             if a forwarded call is routed to another master
+	 */
+	static ServerInfo route(ConsistentHash<ServerInfo> ring, ServerInfo self, String name, boolean forwarded) {
+		ServerInfo owner = ring.get(name);
+		if (owner.equals(self)) {
+			return null;
+		}
+		if (forwarded) {
+			throw new IllegalStateException("[ERROR] " + name + " is forwarded to the master " + self
+					+ " but routed to the master " + owner + ", ring mismatch. Please start the masters with the same"
+					+ " peers.");
+		}
+		return owner;
+	}
+
+	/**
+	 * Helper function to get a registered continuous job
+	 * 
+	 * @param jobName
+	 *            the job name
+	 * @return the job
+	 */
+	private ContinuousJob getJob(String jobName) {
+		return jobs.get(jobName);
+	}
+
+	/**
+	 * Helper function to dispatch the pending sub tasks of every continuous
+	 * job as a micro batch
+	 */
+	private void dispatchMicroBatches() {
+		jobs.removeRetired(System.currentTimeMillis());
+		for (ContinuousJob continuousJob : jobs.getJobs()) {
+			Task microBatch = continuousJob.nextMicroBatch(System.currentTimeMillis());
+			if (microBatch == null) {
+				continue;
+			}
+			jobExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						continuousJob.complete(reduce(microBatch, mapWithLeases(microBatch)));
+					} catch (IOException | RuntimeException e) {
+						// dispatch the sub tasks again after a backoff
+						if (continuousJob.fail(microBatch, e.toString(), System.currentTimeMillis())) {
+							System.out.println("[WARN ] Micro batch " + microBatch.getTaskName() + " failed: " + e);
+						} else {
+							System.out.println("[ERROR] Micro batch " + microBatch.getTaskName()
+									+ " failed too many times, the continuous job is failed: " + e);
+						}
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Helper function to map the task while holding the leases of the slaves
+	 * 
+	 * @param task
+	 *            the task
+	 * @return the results of the split tasks
+	 * @throws IOException
+	 *             if no slave has capacity
+	 */
+	private List<Task> mapWithLeases(Task task) throws IOException {
+		synchronized (leaseLock) {
+			activeTasks++;
+			renewLeases(false);
+		}
+		try {
+			return map(task);
+		} finally {
+			synchronized (leaseLock) {
+				activeTasks--;
+				idleSince = System.currentTimeMillis();
+			}
+		}
+	}
+
+	@Override
+	public ServerInfo locateMaster(String taskName) {
+		return masterRing.get(taskName);
+	}
+
+	@Override
+	public List<ServerInfo> getMasters() {
+		return masterRing.getNodes();
+	}
+
+	/**
+	 * Helper function to get the cached stub of another master
+	 * 
+	 * @param info
+	 *            the master info
+	 * @return the stub
+	 * @throws IOException
+	 *             if not found
+	 */
+	private MasterService getMasterService(ServerInfo info) throws IOException {
+		MasterService masterService = masterServices.get(info);
+		if (masterService == null) {
+			try {
+				masterService = (MasterService) LocateRegistry.getRegistry(info.getHostName(), info.getPort())
+						.lookup(info.getServiceName());
+			} catch (NotBoundException e) {
+				throw new IOException(e);
+			}
+			masterServices.put(info, masterService);
+		}
+		return masterService;
+	}
+
+	/**
+	 * Helper function to acquire or renew the leases of the slaves. Each
+	 * master asks for the whole queue of every slave, and the slave splits it
+	 * among the masters holding a lease, so the share of an idle or crashed
+	 * master goes to the others.
+	 * 
+	 * @param force
+	 *            renew even if the lease is not about to expire
+	 */
+	private void renewLeases(boolean force) {
+		synchronized (leaseLock) {
+			renewLeasesLocked(force);
+		}
+	}
+
+	/**
+	 * Helper function of {@link #renewLeases(boolean)} holding the lease lock
+	 */
+	private void renewLeasesLocked(boolean force) {
+		long renewTime = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(HEARTBEAT_SECONDS);
+		for (SlaveService slaveService : slaveServices) {
+			Lease lease = leases.get(slaveService);
+			if (!force && lease != null && !lease.isExpired(renewTime)) {
+				continue;
+			}
+			int slots = slaveStatuses.get(slaveService).getQueueLimit();
+			try {
+				// expire the lease by the clock of this master, counted from
+				// the request so it never outlives the lease on the slave
+				long requestTime = System.currentTimeMillis();
+				lease = slaveService.acquireLease(masterInfo.toString(), slots, LEASE_MILLIS);
+				leases.put(slaveService, lease.restart(requestTime));
+			} catch (IOException e) {
+				System.out.println("[WARN ] Lease from a slave failed: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Helper function to give the leases back to the slaves when this master
+	 * has been idle for {@link #LEASE_IDLE_MILLIS}. The leases are kept for a
+	 * while, so the tasks and micro batches coming one after another do not
+	 * acquire and release them every time. Must hold the lease lock.
+	 * 
+	 * @param now
+	 *            the current time in milliseconds
+	 */
+	private void releaseIdleLeases(long now) {
+		if (activeTasks > 0 || now - idleSince < LEASE_IDLE_MILLIS || leases.isEmpty()) {
+			return;
+		}
+		System.out.println("[INFO ] Master " + masterInfo + " is idle and gives the leases back.");
+		for (SlaveService slaveService : slaveServices) {
+			if (leases.remove(slaveService) == null) {
+				continue;
+			}
+			try {
+				slaveService.releaseLease(masterInfo.toString());
+			} catch (IOException e) {
+				System.out.println("[WARN ] Release the lease of a slave failed: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Helper function to get the number of sub tasks this master could
+	 * dispatch to the slave now, see
+	 * {@link DispatchLedger#getCapacity(Object, Lease, SlaveStatus, long)}
+	 * 
+	 * @param slaveService
+	 *            the slave
+	 * @return the capacity
+	 */
+	private int getCapacity(SlaveService slaveService) {
+		return ledger.getCapacity(slaveService, leases.get(slaveService), slaveStatuses.get(slaveService),
+				System.currentTimeMillis());
+	}
+
+	@Override
+	public Broadcast broadcast(String name, Serializable value) throws IOException {
+		if (value == null) {
+			throw new IllegalArgumentException("[ERROR] Empty broadcast value is send to master server.");
+		}
+		byte[] content = Broadcast.serialize(value);
+		Broadcast broadcast = new Broadcast(name, Broadcast.hash(content));
+		synchronized (broadcastReferences) {
+			// the same content is shared by the handles until the last one is
+			// removed
+			Integer references = broadcastReferences.get(broadcast.getId());
+			broadcastReferences.put(broadcast.getId(), references == null ? 1 : references + 1);
+			// keep the content to ship it again to a slave which lost it
+			broadcastContents.put(broadcast.getId(), content);
+		}
+
+		// only transfer to the slaves which have not cached the same content
+		int shipped = 0;
+		for (SlaveService slaveService : slaveServices) {
+			if (!slaveService.hasBroadcast(broadcast.getId())) {
+				slaveService.putBroadcast(broadcast.getId(), content);
+				shipped++;
+			}
+		}
+		System.out.println("[INFO ] Broadcast " + name + "(" + content.length + " bytes) is shipped to " + shipped
+				+ " of " + slaveServices.size() + " slaves.");
+		return broadcast;
+	}
+
+	@Override
+	public void unbroadcast(Broadcast broadcast) throws IOException {
+		synchronized (broadcastReferences) {
+			Integer references = broadcastReferences.get(broadcast.getId());
+			if (references == null) {
+				throw new IllegalArgumentException(
+						"[ERROR] Broadcast " + broadcast.getName() + " is not broadcast by this master.");
+			}
+			if (references > 1) {
+				broadcastReferences.put(broadcast.getId(), references - 1);
+				System.out.println("[INFO ] Broadcast " + broadcast.getName() + " is still referenced by "
+						+ (references - 1) + " handles.");
+				return;
+			}
+			broadcastReferences.remove(broadcast.getId());
+			broadcastContents.remove(broadcast.getId());
+		}
+		for (SlaveService slaveService : slaveServices) {
+			slaveService.removeBroadcast(broadcast.getId());
+		}
+		System.out.println("[INFO ] Broadcast " + broadcast.getName() + " is removed from " + slaveServices.size()
+				+ " slaves.");
+	}
+
+	@Override
+	public byte[] getBroadcastContent(String id) {
+		return broadcastContents.get(id);
+	}
 
+	/**
+	 * Helper function to ship a broadcast value again to a slave which lost
+	 * it. The value may have been broadcast by another master sharing the
+	 * slaves, so the peers are asked if this master does not have it.
+	 * 
+	 * @param slaveService
+	 *            the slave
+	 * @param id
+	 *            the content hash
+	 * @throws IOException
+	 *             if no master has the content
+	 */
+	private void reshipBroadcast(SlaveService slaveService, String id) throws IOException {
+		byte[] content = broadcastContents.get(id);
+		for (ServerInfo peer : masterRing.getNodes()) {
+			if (content != null) {
+				break;
+			}
+			if (!peer.equals(masterInfo)) {
+				content = getMasterService(peer).getBroadcastContent(id);
+			}
+		}
+		if (content == null) {
+			throw new IOException("[ERROR] Broadcast " + id + " is lost on a slave and unknown to the masters.");
+		}
+		slaveService.putBroadcast(id, content);
+		System.out.println("[INFO ] Broadcast " + id + " is shipped again to a slave.");
 	}
 
 	/**
-	 * Helper function to split a main task into many smaller tasks
+	 * Helper function to split the pending sub tasks into smaller tasks. Each
+	 * slave gets at most the capacity it reported and this master leased, and
+	 * the slaves without capacity are skipped. The capacity of each split task
+	 * is reserved in the {@link DispatchLedger} until its result or rejection
+	 * is back, so the tasks mapped at the same time do not spend the same
+	 * capacity.
 	 * 
 	 * @param mainTask
 	 *            the main task
-	 * @return
+	 * @param pending
+	 *            the sub task requests not dispatched yet
+	 * @param targets
+	 *            filled with the slave for each split task
+	 * @param firstIndex
+	 *            the index to name the first split task
+	 * @return the split tasks, empty if no slave has capacity
+	 */
+	private List<Task> splitTask(Task mainTask, Deque<String> pending, List<SlaveService> targets, int firstIndex) {
+		synchronized (ledger) {
+			return splitTaskLocked(mainTask, pending, targets, firstIndex);
+		}
+	}
+
+	/**
+	 * Helper function of {@link #splitTask(Task, Deque, List, int)} holding
+	 * the lock of the ledger
 	 */
-	private List<Task> splitTask(Task mainTask) {
+	private List<Task> splitTaskLocked(Task mainTask, Deque<String> pending, List<SlaveService> targets,
+			int firstIndex) {
 		List<Task> splitTasks = new ArrayList<Task>();
-		int total = mainTask.getSize();
-		int slaveNum = slaveServices.size();
-		int length = total / slaveNum + 1;
-		int count = 0;
-		int index = 0;
+		List<SlaveService> available = new ArrayList<SlaveService>();
+		for (SlaveService slaveService : slaveServices) {
+			if (getCapacity(slaveService) > 0) {
+				available.add(slaveService);
+			}
+		}
+		if (available.isEmpty()) {
+			return splitTasks;
+		}
+		int length = pending.size() / available.size() + 1;
+		int index = firstIndex;
 
 		// build the task list
 		Task.Builder builder = new Task.Builder();
-		builder.setTaskName(mainTask.getTaskName() + Integer.toString(index));
-		for (Map.Entry<String, String> e : mainTask.getSubTasks().entrySet()) {
-			builder.addSubTask(e.getKey());
-			count++;
-			if (count == length) {
-				splitTasks.add(builder.build());
-				// reset
-				count = 0;
-				index++;
-				builder.setTaskName(mainTask.getTaskName() + Integer.toString(index));
-			}
-		}
-		splitTasks.add(builder.build());
+		for (SlaveService slaveService : available) {
+			if (pending.isEmpty()) {
+				break;
+			}
+			int size = Math.min(length, getCapacity(slaveService));
+			builder.setTaskName(mainTask.getTaskName() + Integer.toString(index));
+			addBroadcasts(builder, mainTask);
+			for (int i = 0; i < size && !pending.isEmpty(); i++) {
+				builder.addSubTask(pending.poll());
+			}
+			Task splitTask = builder.build();
+			ledger.reserve(slaveService, splitTask.getSize());
+			splitTasks.add(splitTask);
+			targets.add(slaveService);
+			index++;
+		}
 		System.out.println("[INFO] Split the task into " + splitTasks.size() + " smaller tasks.");
 		return splitTasks;
 	}
 
 	/**
-	 * Map function to map the task to different slaves
+	 * Helper function to carry the broadcast handles into a split task
+	 * 
+	 * @param builder
+	 *            the builder of the split task
+	 * @param mainTask
+	 *            the main task
+	 */
+	private void addBroadcasts(Task.Builder builder, Task mainTask) {
+		for (Broadcast broadcast : mainTask.getBroadcasts()) {
+			builder.addBroadcast(broadcast);
+		}
+	}
+
+	/**
+	 * Map function to map the task to different slaves. The sub tasks are
+	 * dispatched in rounds limited by the capacity of the slaves, and the
+	 * batches rejected by an overloaded slave are dispatched again.
 	 * 
 	 * @param mainTask
 	 * @return
+	 * @throws IOException
+	 *             if no slave has capacity for {@link #MAX_WAIT_MILLIS}
 	 */
-	private List<Task> map(Task mainTask) {
-		List<Task> splitTasks = splitTask(mainTask);
+	private List<Task> map(Task mainTask) throws IOException {
+		Deque<String> pending = new ArrayDeque<String>(mainTask.getSubTasks().keySet());
+		List<Task> mapResult = new ArrayList<Task>();
+		int index = 0;
+		long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
 
-		List<Callable<Task>> splitTasksCallables = new ArrayList<Callable<Task>>();
+		while (!pending.isEmpty()) {
+			List<SlaveService> targets = new ArrayList<SlaveService>();
+			List<Task> splitTasks = splitTask(mainTask, pending, targets, index);
+			if (splitTasks.isEmpty()) {
+				if (ledger.getTotalInFlight() > 0) {
+					// the capacity is spent by this master, and comes back
+					// with the results
+					deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+				}
+				waitForCapacity(deadline);
+				continue;
+			}
+			index += splitTasks.size();
 
-		int index = 0;
-		for (Task splitTask : splitTasks) {
-			SlaveService slaveService = slaveServices.get(index);
-			splitTasksCallables.add(new Callable<Task>() {
-				@Override
-				public Task call() throws Exception {
-					return slaveService.execute(splitTask);
+			List<Callable<Task>> splitTasksCallables = new ArrayList<Callable<Task>>();
+			for (int i = 0; i < splitTasks.size(); i++) {
+				SlaveService slaveService = targets.get(i);
+				Task splitTask = splitTasks.get(i);
+				splitTasksCallables.add(new Callable<Task>() {
+					@Override
+					public Task call() throws Exception {
+						try {
+							// ship the lost values again, as long as the slave
+							// reports new ones
+							Set<String> reshipped = new HashSet<String>();
+							while (true) {
+								try {
+									return slaveService.execute(splitTask);
+								} catch (BroadcastMissingException e) {
+									if (!reshipped.addAll(e.getIds())) {
+										throw e;
+									}
+									for (String id : e.getIds()) {
+										reshipBroadcast(slaveService, id);
+									}
+								}
+							}
+						} finally {
+							ledger.release(slaveService, splitTask.getSize());
+						}
+					}
+				});
+			}
+
+			try {
+				// use future to get the result
+				List<Future<Task>> splitTasksResults = executor.invokeAll(splitTasksCallables);
+				for (int i = 0; i < splitTasksResults.size(); i++) {
+					try {
+						Task splitTaskResult = splitTasksResults.get(i).get();
+						if (splitTaskResult.getSlaveStatus() != null) {
+							slaveStatuses.put(targets.get(i), splitTaskResult.getSlaveStatus());
+						}
+						mapResult.add(splitTaskResult);
+						deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+					} catch (ExecutionException e) {
+						if (!(e.getCause() instanceof SlaveOverloadedException)) {
+							throw e;
+						}
+						// dispatch the rejected batch again in the next round
+						SlaveOverloadedException overloaded = (SlaveOverloadedException) e.getCause();
+						slaveStatuses.put(targets.get(i), overloaded.getStatus());
+						pending.addAll(splitTasks.get(i).getSubTasks().keySet());
+						System.out.println("[WARN ] Batch is rejected by " + overloaded.getStatus());
+					}
 				}
-			});
-			index++;
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException(e);
+			}
 		}
+		return mapResult;
+	}
 
+	/**
+	 * Helper function to wait until some reserved capacity is given back, or
+	 * an overloaded slave reports capacity again
+	 * 
+	 * @param deadline
+	 *            the time to give up
+	 * @throws IOException
+	 *             if no slave has capacity before the deadline
+	 */
+	private void waitForCapacity(long deadline) throws IOException {
+		if (System.currentTimeMillis() > deadline) {
+			throw new IOException("[ERROR] All the slaves are overloaded. Please submit the task later.");
+		}
 		try {
-			// use future to get the result
-			List<Future<Task>> splitTasksResults = executor.invokeAll(splitTasksCallables);
-			List<Task> mapResult = new ArrayList<Task>();
-			for (Future<Task> splitTaskResult : splitTasksResults) {
-				mapResult.add(splitTaskResult.get());
-			}
-			return mapResult;
-		} catch (InterruptedException | ExecutionException e) {
+			ledger.await(WAIT_MILLIS);
+		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
 		}
+		for (SlaveStatus status : slaveStatuses.values()) {
+			if (status.isOverloaded()) {
+				heartbeat();
+				return;
+			}
+		}
+		// the leases may have expired while waiting, e.g. the slave was down
+		long now = System.currentTimeMillis();
+		for (SlaveService slaveService : slaveServices) {
+			Lease lease = leases.get(slaveService);
+			if (lease == null || lease.isExpired(now)) {
+				renewLeases(false);
+				return;
+			}
+		}
+	}
 
+	/**
+	 * Heartbeat to refresh the load reports of all the slaves, renew the
+	 * leases while this master has tasks to map, and give them back once it
+	 * has been idle for {@link #LEASE_IDLE_MILLIS}
+	 */
+	private void heartbeat() {
+		for (SlaveService slaveService : slaveServices) {
+			try {
+				slaveStatuses.put(slaveService, slaveService.getStatus());
+			} catch (IOException e) {
+				System.out.println("[WARN ] Heartbeat to a slave failed: " + e.getMessage());
+			}
+		}
+		synchronized (leaseLock) {
+			if (activeTasks > 0) {
+				renewLeasesLocked(true);
+			} else {
+				releaseIdleLeases(System.currentTimeMillis());
+			}
+		}
 	}
 
 	/**
-	 * Reduce function to collect results from the slaves
+	 * Reduce function to collect results from the slaves. The results are in
+	 * the order of the requests of the main task, even if some split tasks
+	 * were dispatched again.
 	 * 
+	 * @param mainTask
 	 * @param tasks
 	 * @return
 	 */
-	private Task reduce(List<Task> splitTasks) {
-		Task.Builder builder = new Task.Builder();
-		builder.setTaskName("[Merged]" + splitTasks.get(0).getTaskName());
+	private Task reduce(Task mainTask, List<Task> splitTasks) {
+		Map<String, String> results = new HashMap<String, String>();
 		for (Task splitTask : splitTasks) {
-			for (Map.Entry<String, String> e : splitTask.getSubTasks().entrySet()) {
-				builder.addSubTaskResult(e.getKey(), e.getValue());
-			}
+			results.putAll(splitTask.getSubTasks());
+		}
+		Task.Builder builder = new Task.Builder();
+		builder.setTaskName("[Merged]" + mainTask.getTaskName() + "0");
+		for (String request : mainTask.getSubTasks().keySet()) {
+			builder.addSubTaskResult(request, results.get(request));
 		}
 		return builder.build();
 	}
@@ -209,6 +930,7 @@ public class MasterServer implements MasterService {
 	 * The main entry to run the master server.
 	 * 
 	 * Command Line arguments: <Service name> <host name> <port number>
+	 * [<peer master name>@<host name>:<port number> ...]
 	 * 
 	 * @param args
 	 *            the input arguments
@@ -217,19 +939,23 @@ public class MasterServer implements MasterService {
 	 *             if the created worker server is already bounded
 	 */
 	public static void main(String[] args) throws IOException, NotBoundException, AlreadyBoundException {
-		if (args.length != ARGS_LENGTH) {
+		if (args.length < ARGS_LENGTH) {
 			throw new IllegalArgumentException("[ERROR] Not enough input argument to set up a master server");
 		}
 		String serviceName = args[0];
 		String hostName = args[1];
 		int port = Integer.parseInt(args[2]);
 		String rootPath = serviceName + "_WorkingDirectory";
+		List<ServerInfo> peers = new ArrayList<ServerInfo>();
+		for (int i = ARGS_LENGTH; i < args.length; i++) {
+			peers.add(ServerInfo.parse(args[i]));
+		}
 
 		// set property
 		System.setProperty("java.rmi.server.hostname", hostName);
 
 		// create master
-		MasterServer masterServer = new MasterServer(serviceName, hostName, port, rootPath);
+		MasterServer masterServer = new MasterServer(serviceName, hostName, port, rootPath, peers);
 
 		Registry registry = LocateRegistry.createRegistry(port);
 		registry.bind(serviceName, UnicastRemoteObject.exportObject(masterServer, port));
@@ -239,7 +965,7 @@ public class MasterServer implements MasterService {
 		StringBuilder sb = new StringBuilder();
 		sb.append("[INFO ] Master server, ").append(masterServer.serviceName).append(", ").append(masterServer.hostName)
 				.append(", ").append(masterServer.port).append(", with ").append(masterServer.slaveServices.size())
-				.append(" slave servers, start running.");
+				.append(" slave servers and ").append(peers.size()).append(" peer masters, start running.");
 		System.out.println(sb.toString());
 	}
 
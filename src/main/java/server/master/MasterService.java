@@ -1,8 +1,13 @@
 package server.master;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.rmi.Remote;
+import java.util.List;
 
+import server.ServerInfo;
+import utility.Broadcast;
+import utility.JobSnapshot;
 import utility.Task;
 
 /**
@@ -14,7 +19,8 @@ import utility.Task;
  */
 public interface MasterService extends Remote {
 	/**
-	 * Submit the task to the master server
+	 * Submit the task to the master server. A task routed to another master is
+	 * forwarded to it.
 	 * 
 	 * @param task
 	 *            the task
@@ -22,4 +28,201 @@ public interface MasterService extends Remote {
 	 * @throws IOException
 	 */
 	Task submitTask(Task task) throws IOException;
+
+	/**
+	 * Submit the task to the master server
+	 * 
+	 * @param task
+	 *            the task
+	 * @param forwarded
+	 *            whether the task is forwarded by another master, then it is
+	 *            not forwarded again
+	 * @return
+	 * @throws IOException
+	 */
+	Task submitTask(Task task, boolean forwarded) throws IOException;
+
+	/**
+	 * Ship a read only value once to every slave. The returned handle could be
+	 * added to any later task to reference the value from the function.
+	 * 
+	 * @param name
+	 *            the name to look up the value on the slave
+	 * @param value
+	 *            the value
+	 * @return the broadcast handle
+	 * @throws IOException
+	 */
+	Broadcast broadcast(String name, Serializable value) throws IOException;
+
+	/**
+	 * Remove a broadcast handle. The same content broadcast several times
+	 * shares one value, which is removed from the master and every slave when
+	 * its last handle is removed. The tasks referencing the value fail
+	 * afterwards.
+	 * 
+	 * @param broadcast
+	 *            the broadcast handle
+	 * @throws IOException
+	 */
+	void unbroadcast(Broadcast broadcast) throws IOException;
+
+	/**
+	 * Get the content of a value broadcast by this master, so another master
+	 * could ship it again to a slave which lost it
+	 * 
+	 * @param id
+	 *            the content hash
+	 * @return the serialized value, null if unknown
+	 * @throws IOException
+	 */
+	byte[] getBroadcastContent(String id) throws IOException;
+
+	/**
+	 * Find the master which the task is routed to by its name
+	 * 
+	 * @param taskName
+	 *            the task name
+	 * @return the master info
+	 * @throws IOException
+	 */
+	ServerInfo locateMaster(String taskName) throws IOException;
+
+	/**
+	 * Get all the masters, so the client could route the tasks by itself
+	 * with a {@link utility.ConsistentHash} of them
+	 * 
+	 * @return the master infos
+	 * @throws IOException
+	 */
+	List<ServerInfo> getMasters() throws IOException;
+
+	/**
+	 * Register a continuous job. The master keeps dispatching the sub tasks
+	 * appended to the job in micro batches, and updates the aggregate with the
+	 * results of every micro batch.
+	 * 
+	 * @param job
+	 *            the job named by the task name, with the broadcast handles
+	 *            and the initial sub tasks
+	 * @throws IOException
+	 */
+	void registerJob(Task job) throws IOException;
+
+	/**
+	 * Register a continuous job, see {@link #registerJob(Task)}
+	 * 
+	 * @param job
+	 *            the job
+	 * @param forwarded
+	 *            whether the call is forwarded by another master
+	 * @throws IOException
+	 */
+	void registerJob(Task job, boolean forwarded) throws IOException;
+
+	/**
+	 * Append the sub tasks to a continuous job. The sub tasks appended before
+	 * are skipped.
+	 * 
+	 * @param delta
+	 *            the sub tasks named by the job name
+	 * @return the number of appended sub tasks
+	 * @throws IOException
+	 */
+	int appendSubTasks(Task delta) throws IOException;
+
+	/**
+	 * Append the sub tasks to a continuous job, see
+	 * {@link #appendSubTasks(Task)}
+	 * 
+	 * @param delta
+	 *            the sub tasks named by the job name
+	 * @param forwarded
+	 *            whether the call is forwarded by another master
+	 * @return the number of appended sub tasks
+	 * @throws IOException
+	 */
+	int appendSubTasks(Task delta, boolean forwarded) throws IOException;
+
+	/**
+	 * Poll the results of a continuous job added after the version
+	 * 
+	 * @param jobName
+	 *            the job name
+	 * @param fromVersion
+	 *            the version, 0 for the whole aggregate
+	 * @return the snapshot
+	 * @throws IOException
+	 */
+	JobSnapshot getJobResult(String jobName, long fromVersion) throws IOException;
+
+	/**
+	 * Poll the results of a continuous job, see
+	 * {@link #getJobResult(String, long)}
+	 * 
+	 * @param jobName
+	 *            the job name
+	 * @param fromVersion
+	 *            the version, 0 for the whole aggregate
+	 * @param forwarded
+	 *            whether the call is forwarded by another master
+	 * @return the snapshot
+	 * @throws IOException
+	 */
+	JobSnapshot getJobResult(String jobName, long fromVersion, boolean forwarded) throws IOException;
+
+	/**
+	 * Subscribe to a continuous job by waiting until a micro batch after the
+	 * version finishes, or the timeout elapses
+	 * 
+	 * @param jobName
+	 *            the job name
+	 * @param afterVersion
+	 *            the version known by the subscriber
+	 * @param timeoutMillis
+	 *            the max time to wait
+	 * @return the snapshot with the results added after the version
+	 * @throws IOException
+	 */
+	JobSnapshot awaitJobResult(String jobName, long afterVersion, long timeoutMillis) throws IOException;
+
+	/**
+	 * Subscribe to a continuous job, see
+	 * {@link #awaitJobResult(String, long, long)}
+	 * 
+	 * @param jobName
+	 *            the job name
+	 * @param afterVersion
+	 *            the version known by the subscriber
+	 * @param timeoutMillis
+	 *            the max time to wait
+	 * @param forwarded
+	 *            whether the call is forwarded by another master
+	 * @return the snapshot with the results added after the version
+	 * @throws IOException
+	 */
+	JobSnapshot awaitJobResult(String jobName, long afterVersion, long timeoutMillis, boolean forwarded)
+			throws IOException;
+
+	/**
+	 * Close a continuous job. The pending sub tasks are not dispatched anymore.
+	 * 
+	 * @param jobName
+	 *            the job name
+	 * @return the whole aggregate
+	 * @throws IOException
+	 */
+	JobSnapshot closeJob(String jobName) throws IOException;
+
+	/**
+	 * Close a continuous job, see {@link #closeJob(String)}
+	 * 
+	 * @param jobName
+	 *            the job name
+	 * @param forwarded
+	 *            whether the call is forwarded by another master
+	 * @return the whole aggregate
+	 * @throws IOException
+	 */
+	JobSnapshot closeJob(String jobName, boolean forwarded) throws IOException;
 }
@@ -0,0 +1,44 @@
+package server.slave;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BroadcastMissingException - Thrown by the {@link SlaveServer} when a task
+ * references broadcast values it has not cached, e.g. the slave restarted
+ * with an empty working directory. All the missing values are reported at
+ * once, and the master should ship them again and retry the task.
+ *
+ * @author yu
+ *
+ */
+public class BroadcastMissingException extends IOException {
+	/** version UID by default */
+	private static final long serialVersionUID = 1L;
+
+	/** the content hashes of the missing values */
+	private final List<String> ids;
+
+	/**
+	 * Construct the exception
+	 *
+	 * @param message
+	 *            the message
+	 * @param ids
+	 *            the content hashes of the missing values
+	 */
+	public BroadcastMissingException(String message, List<String> ids) {
+		super(message);
+		this.ids = new ArrayList<String>(ids);
+	}
+
+	/**
+	 * Getter for the content hashes
+	 *
+	 * @return ids
+	 */
+	public List<String> getIds() {
+		return ids;
+	}
+}
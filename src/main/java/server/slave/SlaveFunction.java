@@ -0,0 +1,26 @@
+package server.slave;
+
+import java.util.Map;
+
+/**
+ * SlaveFunction - The function the {@link SlaveServer} runs for every sub
+ * task. The implementation is named by the system property
+ * {@value SlaveServer#FUNCTION_PROPERTY} when the slave starts, and needs a
+ * public constructor without arguments. It is called by many worker threads
+ * at the same time.
+ *
+ * @author yu
+ *
+ */
+public interface SlaveFunction {
+	/**
+	 * Compute the result of a sub task
+	 *
+	 * @param request
+	 *            the sub task request
+	 * @param sideInputs
+	 *            the broadcast values referenced by the task, by name
+	 * @return the result
+	 */
+	String apply(String request, Map<String, Object> sideInputs);
+}
@@ -0,0 +1,43 @@
+package server.slave;
+
+import java.io.IOException;
+
+import utility.SlaveStatus;
+
+/**
+ * SlaveOverloadedException - Thrown by the {@link SlaveServer} when it rejects
+ * a batch because it is near its memory or queue limit. The master should
+ * dispatch the batch again later.
+ *
+ * @author yu
+ *
+ */
+public class SlaveOverloadedException extends IOException {
+	/** version UID by default */
+	private static final long serialVersionUID = 1L;
+
+	/** the status of the slave when the batch is rejected */
+	private final SlaveStatus status;
+
+	/**
+	 * Construct the exception
+	 *
+	 * @param message
+	 *            the message
+	 * @param status
+	 *            the status of the slave
+	 */
+	public SlaveOverloadedException(String message, SlaveStatus status) {
+		super(message);
+		this.status = status;
+	}
+
+	/**
+	 * Getter for the status
+	 *
+	 * @return status
+	 */
+	public SlaveStatus getStatus() {
+		return status;
+	}
+}
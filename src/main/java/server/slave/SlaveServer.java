@@ -1,13 +1,20 @@
 package server.slave;
 
+import utility.Broadcast;
+import utility.Lease;
+import utility.SlaveStatus;
 import utility.Task;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.rmi.AlreadyBoundException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -15,6 +22,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Slave - Execute the work assigned to this sever from the
@@ -30,6 +38,24 @@ public class SlaveServer implements SlaveService {
 	/** the length of the required arguments */
 	private static final int ARGS_LENGTH = 3;
 
+	/** the system property of the class name of the {@link SlaveFunction} */
+	public static final String FUNCTION_PROPERTY = "function";
+
+	/** the file suffix of the cached broadcast values */
+	private static final String BROADCAST_SUFFIX = ".broadcast";
+
+	/**
+	 * the max number of broadcast values kept in memory, the least recently
+	 * used ones are evicted and loaded from the disk again when needed
+	 */
+	private static final int MAX_CACHED_BROADCASTS = 16;
+
+	/** how long to defer a batch waiting for memory or queue before rejecting */
+	static final long DEFER_MILLIS = 2000;
+
+	/** how often to check the memory again while deferring a batch */
+	private static final long DEFER_POLL_MILLIS = 100;
+
 	/** service name */
 	private final String serviceName;
 
@@ -45,8 +71,39 @@ public class SlaveServer implements SlaveService {
 	/** the executor */
 	private ExecutorService executor = Executors.newFixedThreadPool(NUM_THREAD);
 
-	/** construct a slave server */
+	/** the broadcast values cached by content hash, in access order */
+	private final Map<String, Object> broadcastCache = new LinkedHashMap<String, Object>(MAX_CACHED_BROADCASTS,
+			0.75f, true) {
+		/** version UID by default */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+			return size() > MAX_CACHED_BROADCASTS;
+		}
+	};
+
+	/** the number of sub tasks accepted but not finished */
+	private final AtomicInteger queueDepth = new AtomicInteger();
+
+	/** the lock to admit the batches one by one */
+	private final Object admissionLock = new Object();
+
+	/** the leases granted to the masters, by master name */
+	private final Map<String, Lease> leases = new HashMap<String, Lease>();
+
+	/** the function to run for every sub task */
+	private final SlaveFunction function;
+
+	/** construct a slave server running the default function */
 	public SlaveServer(String serviceName, String hostName, int port, String rootPath) throws IOException {
+		this(serviceName, hostName, port, rootPath, null);
+	}
+
+	/** construct a slave server running the function, the default one if null */
+	public SlaveServer(String serviceName, String hostName, int port, String rootPath, SlaveFunction function)
+			throws IOException {
+		this.function = function != null ? function : this::concreteFunction;
 		this.serviceName = serviceName;
 		this.hostName = hostName;
 		this.port = port;
@@ -68,6 +125,25 @@ public class SlaveServer implements SlaveService {
 					"[INFO ] Slave server(" + this.serviceName + ") recognizes " + task.getSize() + " subTasks");
 		}
 
+		// resolve the broadcast values referenced by the task, and report all
+		// the missing ones at once
+		Map<String, Object> sideInputs = new HashMap<String, Object>();
+		List<String> missingIds = new ArrayList<String>();
+		List<String> missingNames = new ArrayList<String>();
+		for (Broadcast broadcast : task.getBroadcasts()) {
+			Object value = getBroadcast(broadcast.getId());
+			if (value == null) {
+				missingIds.add(broadcast.getId());
+				missingNames.add(broadcast.getName());
+			} else {
+				sideInputs.put(broadcast.getName(), value);
+			}
+		}
+		if (!missingIds.isEmpty()) {
+			throw new BroadcastMissingException("[ERROR] Broadcast " + missingNames + " is not found on slave server("
+					+ this.serviceName + ").", missingIds);
+		}
+
 		Map<String, String> subTasks = task.getSubTasks();
 		List<Callable<String>> subTasksCallables = new ArrayList<Callable<String>>();
 
@@ -75,11 +151,12 @@ public class SlaveServer implements SlaveService {
 			subTasksCallables.add(new Callable<String>() {
 				@Override
 				public String call() throws Exception {
-					return concreteFunction(request);
+					return function.apply(request, sideInputs);
 				}
 			});
 		}
 
+		admit(subTasks.size());
 		try {
 			List<Future<String>> subTasksResults = executor.invokeAll(subTasksCallables);
 			int i = 0;
@@ -88,29 +165,213 @@ public class SlaveServer implements SlaveService {
 				subTasks.put(e.getKey(), future.get());
 				i++;
 			}
-			return task;
 		} catch (InterruptedException | ExecutionException e) {
 			throw new RuntimeException(e);
+		} finally {
+			release(subTasks.size());
 		}
+		task.setSlaveStatus(getStatus());
+		return task;
 
 	}
 	
+	@Override
+	public SlaveStatus getStatus() {
+		return SlaveStatus.snapshot(this.serviceName, NUM_THREAD, queueDepth.get());
+	}
+
+	@Override
+	public Lease acquireLease(String masterName, int slots, long durationMillis) {
+		synchronized (leases) {
+			long now = System.currentTimeMillis();
+			int leased = 0;
+			int lessees = 1;
+			for (Iterator<Lease> it = leases.values().iterator(); it.hasNext();) {
+				Lease lease = it.next();
+				if (lease.isExpired(now)) {
+					it.remove();
+				} else if (!lease.getMasterName().equals(masterName)) {
+					leased += lease.getSlots();
+					lessees++;
+				}
+			}
+			// grant the free slots, or at least a fair share of the active
+			// lessees; the others shrink to their fair share when they renew
+			int queueLimit = getStatus().getQueueLimit();
+			int fairShare = (queueLimit + lessees - 1) / lessees;
+			int granted = Math.min(slots, Math.max(queueLimit - leased, fairShare));
+			Lease lease = new Lease(this.serviceName, masterName, granted, durationMillis, now);
+			leases.put(masterName, lease);
+			return lease;
+		}
+	}
+
+	@Override
+	public void releaseLease(String masterName) {
+		synchronized (leases) {
+			leases.remove(masterName);
+		}
+	}
+
+	/**
+	 * Helper function to admit a batch. The batch is deferred while the slave
+	 * is near its memory or queue limit, and rejected if it is still
+	 * overloaded after {@link #DEFER_MILLIS}. A batch larger than the queue
+	 * limit is only admitted when the slave is idle.
+	 * 
+	 * @param size
+	 *            the number of sub tasks in the batch
+	 * @throws SlaveOverloadedException
+	 *             if the batch is rejected
+	 */
+	void admit(int size) throws SlaveOverloadedException {
+		long deadline = System.currentTimeMillis() + DEFER_MILLIS;
+		synchronized (admissionLock) {
+			while (true) {
+				SlaveStatus status = getStatus();
+				int depth = status.getQueueDepth();
+				if (!status.isOverloaded() && (depth == 0 || depth + size <= status.getQueueLimit())) {
+					queueDepth.addAndGet(size);
+					return;
+				}
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					System.out.println("[WARN ] Slave server(" + this.serviceName + ") rejects " + size
+							+ " subTasks. Status: " + status);
+					throw new SlaveOverloadedException("[ERROR] Slave server(" + this.serviceName
+							+ ") is overloaded and rejects " + size + " subTasks.", status);
+				}
+				try {
+					admissionLock.wait(Math.min(remaining, DEFER_POLL_MILLIS));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SlaveOverloadedException("[ERROR] Slave server(" + this.serviceName
+							+ ") is interrupted while deferring " + size + " subTasks.", status);
+				}
+			}
+		}
+	}
+
 	/**
-	 * The function to execute. Replace based on the situation
+	 * Helper function to release the queue of a finished batch and wake up
+	 * the deferred batches
+	 * 
+	 * @param size
+	 *            the number of sub tasks in the batch
+	 */
+	void release(int size) {
+		synchronized (admissionLock) {
+			queueDepth.addAndGet(-size);
+			admissionLock.notifyAll();
+		}
+	}
+
+	@Override
+	public boolean hasBroadcast(String id) throws IOException {
+		// do not load the value, it may be large and evict the values in use
+		synchronized (broadcastCache) {
+			return broadcastCache.containsKey(id) || getBroadcastFile(id).exists();
+		}
+	}
+
+	@Override
+	public void putBroadcast(String id, byte[] content) throws IOException {
+		if (content == null || !Broadcast.hash(content).equals(id)) {
+			throw new IllegalArgumentException("[ERROR] Broadcast content does not match its hash " + id);
+		}
+		Object value = Broadcast.deserialize(content);
+		synchronized (broadcastCache) {
+			Files.write(getBroadcastFile(id).toPath(), content);
+			broadcastCache.put(id, value);
+		}
+		System.out.println("[INFO ] Slave server(" + this.serviceName + ") caches broadcast " + id);
+	}
+
+	@Override
+	public void removeBroadcast(String id) throws IOException {
+		synchronized (broadcastCache) {
+			broadcastCache.remove(id);
+			Files.deleteIfExists(getBroadcastFile(id).toPath());
+		}
+		System.out.println("[INFO ] Slave server(" + this.serviceName + ") removes broadcast " + id);
+	}
+
+	/**
+	 * Helper function to get a broadcast value from the memory, or from the
+	 * disk if it has been evicted or cached by a previous run
+	 * 
+	 * @param id
+	 *            the content hash
+	 * @return the value, null if not cached
+	 * @throws IOException
+	 *             if the cached file could not be read
+	 */
+	private Object getBroadcast(String id) throws IOException {
+		synchronized (broadcastCache) {
+			Object value = broadcastCache.get(id);
+			if (value != null) {
+				return value;
+			}
+			File file = getBroadcastFile(id);
+			if (!file.exists()) {
+				return null;
+			}
+			value = Broadcast.deserialize(Files.readAllBytes(file.toPath()));
+			broadcastCache.put(id, value);
+			return value;
+		}
+	}
+
+	/**
+	 * Helper function to get the file of a cached broadcast value
+	 * 
+	 * @param id
+	 *            the content hash
+	 * @return the file
+	 */
+	private File getBroadcastFile(String id) {
+		return new File(rootDirectory, id + BROADCAST_SUFFIX);
+	}
+
+	/**
+	 * The default function to execute. Replace it with a {@link SlaveFunction}
+	 * named by {@link #FUNCTION_PROPERTY} based on the situation
 	 * 
 	 * @param request the input
+	 * @param sideInputs the broadcast values referenced by the task, by name
 	 * @return the result
 	 */
-	private String concreteFunction(String request) {
+	private String concreteFunction(String request, Map<String, Object> sideInputs) {
 		System.out.println("[INFO] " + this.serviceName + " is processing the request: " + request);
 		return "Result(Assume we have calculated the result)";
 	}
 
+	/**
+	 * Helper function to create the function named by the system property
+	 * 
+	 * @param className
+	 *            the class name, null for the default function
+	 * @return the function, null for the default function
+	 */
+	private static SlaveFunction loadFunction(String className) {
+		if (className == null || className.trim().length() == 0) {
+			return null;
+		}
+		try {
+			return (SlaveFunction) Class.forName(className.trim()).getConstructor().newInstance();
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new IllegalArgumentException("[ERROR] Slave function " + className + " could not be created.", e);
+		}
+	}
+
 	/**
 	 * The main entry to run the slave server.
 	 * 
 	 * Command Line arguments: <Service name> <host name> <port number>
 	 * 
+	 * The function is named by the system property {@link #FUNCTION_PROPERTY}
+	 * if it is given.
+	 * 
 	 * @param args
 	 *            the input arguments
 	 * @throws IOException
@@ -132,7 +393,8 @@ public class SlaveServer implements SlaveService {
 		System.setProperty("java.rmi.server.hostname", hostName);
 
 		// create worker server
-		SlaveServer slaveServer = new SlaveServer(serviceName, hostName, port, rootPath);
+		SlaveServer slaveServer = new SlaveServer(serviceName, hostName, port, rootPath,
+				loadFunction(System.getProperty(FUNCTION_PROPERTY)));
 
 		// registry
 		Registry registry = LocateRegistry.createRegistry(port);
@@ -3,6 +3,8 @@ package server.slave;
 import java.io.IOException;
 import java.rmi.Remote;
 
+import utility.Lease;
+import utility.SlaveStatus;
 import utility.Task;
 
 /**
@@ -13,12 +15,81 @@ import utility.Task;
  */
 public interface SlaveService extends Remote {
 	/**
-	 * Execute a request
+	 * Execute a request. The returned task carries the load report of the
+	 * slave.
 	 * 
 	 * @param request
 	 * @return
+	 * @throws SlaveOverloadedException
+	 *             if the slave is near its memory or queue limit
+	 * @throws BroadcastMissingException
+	 *             if a referenced broadcast value is not cached
 	 * @throws IOException
 	 */
 	Task execute(Task Task) throws IOException;
 
+	/**
+	 * Heartbeat to get the load report of the slave
+	 * 
+	 * @return the status
+	 * @throws IOException
+	 */
+	SlaveStatus getStatus() throws IOException;
+
+	/**
+	 * Acquire or renew the lease of a master. The slave grants the slots not
+	 * leased to the other masters, but at least a fair share of its queue
+	 * limit among the masters holding a lease, so the shares are balanced again
+	 * as the masters renew. The granted slots may be less than requested.
+	 * 
+	 * @param masterName
+	 *            the master
+	 * @param slots
+	 *            the requested slots
+	 * @param durationMillis
+	 *            the duration of the lease
+	 * @return the lease
+	 * @throws IOException
+	 */
+	Lease acquireLease(String masterName, int slots, long durationMillis) throws IOException;
+
+	/**
+	 * Release the lease of a master
+	 * 
+	 * @param masterName
+	 *            the master
+	 * @throws IOException
+	 */
+	void releaseLease(String masterName) throws IOException;
+
+	/**
+	 * Check whether a broadcast value is already cached on this slave
+	 * 
+	 * @param id
+	 *            the content hash of the value
+	 * @return true if cached
+	 * @throws IOException
+	 */
+	boolean hasBroadcast(String id) throws IOException;
+
+	/**
+	 * Ship a broadcast value to this slave
+	 * 
+	 * @param id
+	 *            the content hash of the value
+	 * @param content
+	 *            the serialized value
+	 * @throws IOException
+	 */
+	void putBroadcast(String id, byte[] content) throws IOException;
+
+	/**
+	 * Remove a broadcast value from the memory and the disk of this slave
+	 * 
+	 * @param id
+	 *            the content hash of the value
+	 * @throws IOException
+	 */
+	void removeBroadcast(String id) throws IOException;
+
 }
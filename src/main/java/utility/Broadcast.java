@@ -0,0 +1,137 @@
+package utility;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Broadcast - A handle to a read only object which has been shipped once to
+ * every slave. The handle is identified by the content hash of the object, so
+ * the same data is only transferred once and could be shared by many tasks.
+ *
+ * @author yu
+ *
+ */
+public class Broadcast implements Serializable {
+	/** version UID by default */
+	private static final long serialVersionUID = 1L;
+
+	/** the digest algorithm for the content hash */
+	private static final String DIGEST = "SHA-256";
+
+	/** the name of the broadcast value, used by the function to look it up */
+	private final String name;
+
+	/** the content hash of the serialized value */
+	private final String id;
+
+	/**
+	 * Construct a broadcast handle
+	 *
+	 * @param name
+	 *            the name
+	 * @param id
+	 *            the content hash
+	 */
+	public Broadcast(String name, String id) {
+		if (name == null || name.length() == 0 || id == null || id.length() == 0) {
+			throw new IllegalArgumentException("[ERROR] Construct Broadcast failed as the name or id is null or empty.");
+		}
+		this.name = name;
+		this.id = id;
+	}
+
+	/**
+	 * Getter for name
+	 *
+	 * @return name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Getter for the content hash
+	 *
+	 * @return id
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Serialize the value into bytes
+	 *
+	 * @param value
+	 *            the value
+	 * @return the bytes
+	 * @throws IOException
+	 *             if the value could not be serialized
+	 */
+	public static byte[] serialize(Serializable value) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+			oos.writeObject(value);
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Deserialize the bytes back to the value
+	 *
+	 * @param content
+	 *            the bytes
+	 * @return the value
+	 * @throws IOException
+	 *             if the bytes could not be deserialized
+	 */
+	public static Object deserialize(byte[] content) throws IOException {
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(content))) {
+			return ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Compute the content hash of the bytes
+	 *
+	 * @param content
+	 *            the bytes
+	 * @return the hex string of the hash
+	 */
+	public static String hash(byte[] content) {
+		try {
+			byte[] digest = MessageDigest.getInstance(DIGEST).digest(content);
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (o == null || getClass() != o.getClass())
+			return false;
+
+		Broadcast that = (Broadcast) o;
+
+		return name.equals(that.name) && id.equals(that.id);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * name.hashCode() + id.hashCode();
+	}
+}
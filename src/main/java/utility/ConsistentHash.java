@@ -0,0 +1,94 @@
+package utility;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ConsistentHash - A hash ring to route a key to one of the nodes. Every node
+ * is placed on the ring many times, so the keys are spread evenly and only a
+ * small part of them move when a node is added or removed. Two rings built
+ * from the same nodes always route a key to the same node.
+ *
+ * @author yu
+ *
+ * @param <T>
+ *            the type of the node, identified by its toString()
+ */
+public class ConsistentHash<T> {
+	/** the number of virtual nodes for each node */
+	private static final int VIRTUAL_NODES = 100;
+
+	/** the digest algorithm for the hash */
+	private static final String DIGEST = "MD5";
+
+	/** the ring */
+	private final TreeMap<Long, T> ring = new TreeMap<Long, T>();
+
+	/** the nodes */
+	private final List<T> nodes;
+
+	/**
+	 * Construct a hash ring
+	 *
+	 * @param nodes
+	 *            the nodes
+	 */
+	public ConsistentHash(Collection<T> nodes) {
+		if (nodes == null || nodes.isEmpty()) {
+			throw new IllegalArgumentException("[ERROR] Construct ConsistentHash failed as the nodes are empty.");
+		}
+		this.nodes = new ArrayList<T>(nodes);
+		for (T node : nodes) {
+			for (int i = 0; i < VIRTUAL_NODES; i++) {
+				ring.put(hash(node.toString() + "#" + Integer.toString(i)), node);
+			}
+		}
+	}
+
+	/**
+	 * Route the key to a node
+	 *
+	 * @param key
+	 *            the key
+	 * @return the node
+	 */
+	public T get(String key) {
+		Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+		return entry == null ? ring.firstEntry().getValue() : entry.getValue();
+	}
+
+	/**
+	 * Getter for the nodes
+	 *
+	 * @return the nodes
+	 */
+	public List<T> getNodes() {
+		return new ArrayList<T>(nodes);
+	}
+
+	/**
+	 * Helper function to hash the key into a position on the ring
+	 *
+	 * @param key
+	 *            the key
+	 * @return the position
+	 */
+	private static long hash(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance(DIGEST).digest(key.getBytes(StandardCharsets.UTF_8));
+			long h = 0;
+			for (int i = 0; i < Long.BYTES; i++) {
+				h = (h << Byte.SIZE) | (digest[i] & 0xff);
+			}
+			return h;
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
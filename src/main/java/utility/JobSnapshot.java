@@ -0,0 +1,124 @@
+package utility;
+
+import java.io.Serializable;
+
+/**
+ * JobSnapshot - The result of a continuous job at a version. Every micro batch
+ * dispatched by the master increases the version by one. A snapshot only
+ * holds the results added after its from version, so a client keeping the
+ * aggregate only receives the delta of each micro batch.
+ *
+ * @author yu
+ *
+ */
+public class JobSnapshot implements Serializable {
+	/** version UID by default */
+	private static final long serialVersionUID = 1L;
+
+	/** the version the results are added after */
+	private final long fromVersion;
+
+	/** the version of the job */
+	private final long version;
+
+	/** the results added after the from version, named by the job */
+	private final Task results;
+
+	/** the number of sub tasks appended but not finished */
+	private final int pending;
+
+	/** whether the job has been closed */
+	private final boolean closed;
+
+	/** the error which failed the job, null if not failed */
+	private final String error;
+
+	/**
+	 * Construct a snapshot
+	 *
+	 * @param fromVersion
+	 *            the version the results are added after
+	 * @param version
+	 *            the version of the job
+	 * @param results
+	 *            the results added after the from version
+	 * @param pending
+	 *            the number of sub tasks not finished
+	 * @param closed
+	 *            whether the job has been closed
+	 * @param error
+	 *            the error which failed the job, null if not failed
+	 */
+	public JobSnapshot(long fromVersion, long version, Task results, int pending, boolean closed, String error) {
+		this.fromVersion = fromVersion;
+		this.version = version;
+		this.results = results;
+		this.pending = pending;
+		this.closed = closed;
+		this.error = error;
+	}
+
+	/**
+	 * Getter for the from version
+	 *
+	 * @return from version
+	 */
+	public long getFromVersion() {
+		return fromVersion;
+	}
+
+	/**
+	 * Getter for the version
+	 *
+	 * @return version
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Getter for the results added after the from version
+	 *
+	 * @return results
+	 */
+	public Task getResults() {
+		return results;
+	}
+
+	/**
+	 * Getter for the number of sub tasks not finished
+	 *
+	 * @return pending
+	 */
+	public int getPending() {
+		return pending;
+	}
+
+	/**
+	 * Whether the job has been closed
+	 *
+	 * @return true if closed
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Whether the job has failed, the pending sub tasks are not dispatched
+	 * anymore
+	 *
+	 * @return true if failed
+	 */
+	public boolean isFailed() {
+		return error != null;
+	}
+
+	/**
+	 * Getter for the error which failed the job
+	 *
+	 * @return error, null if not failed
+	 */
+	public String getError() {
+		return error;
+	}
+}
@@ -0,0 +1,124 @@
+package utility;
+
+import java.io.Serializable;
+
+/**
+ * Lease - A share of the queue of a slave granted to one master for a limited
+ * time. The slaves are shared by many masters, and a master which stops
+ * renewing its lease (e.g. it crashed) gives its share back when the lease
+ * expires.
+ *
+ * @author yu
+ *
+ */
+public class Lease implements Serializable {
+	/** version UID by default */
+	private static final long serialVersionUID = 1L;
+
+	/** service name of the slave */
+	private final String slaveName;
+
+	/** the master holding the lease */
+	private final String masterName;
+
+	/** the number of sub tasks the master could dispatch to the slave */
+	private final int slots;
+
+	/** the duration of the lease in milliseconds */
+	private final long durationMillis;
+
+	/** the time the lease expires, in milliseconds of the local clock */
+	private final long expireTime;
+
+	/**
+	 * Construct a lease
+	 *
+	 * @param slaveName
+	 *            the slave name
+	 * @param masterName
+	 *            the master name
+	 * @param slots
+	 *            the granted slots
+	 * @param durationMillis
+	 *            the duration in milliseconds
+	 * @param startTime
+	 *            the start time in milliseconds of the local clock
+	 */
+	public Lease(String slaveName, String masterName, int slots, long durationMillis, long startTime) {
+		this.slaveName = slaveName;
+		this.masterName = masterName;
+		this.slots = slots;
+		this.durationMillis = durationMillis;
+		this.expireTime = startTime + durationMillis;
+	}
+
+	/**
+	 * Start the same lease at another time. The clocks of the master and the
+	 * slave are not synchronized, so the master restarts the lease granted by
+	 * the slave from the time it sent the request. The lease then expires on
+	 * the master no later than on the slave.
+	 *
+	 * @param startTime
+	 *            the start time in milliseconds of the local clock
+	 * @return the lease
+	 */
+	public Lease restart(long startTime) {
+		return new Lease(slaveName, masterName, slots, durationMillis, startTime);
+	}
+
+	/**
+	 * Getter for slave name
+	 *
+	 * @return slave name
+	 */
+	public String getSlaveName() {
+		return slaveName;
+	}
+
+	/**
+	 * Getter for master name
+	 *
+	 * @return master name
+	 */
+	public String getMasterName() {
+		return masterName;
+	}
+
+	/**
+	 * Getter for slots
+	 *
+	 * @return slots
+	 */
+	public int getSlots() {
+		return slots;
+	}
+
+	/**
+	 * Getter for duration
+	 *
+	 * @return duration in milliseconds
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * Getter for expire time
+	 *
+	 * @return expire time in milliseconds
+	 */
+	public long getExpireTime() {
+		return expireTime;
+	}
+
+	/**
+	 * Whether the lease has expired
+	 *
+	 * @param now
+	 *            the current time in milliseconds
+	 * @return true if expired
+	 */
+	public boolean isExpired(long now) {
+		return now >= expireTime;
+	}
+}
@@ -0,0 +1,195 @@
+package utility;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+ * SlaveStatus - The load report of a slave. It is attached to every batch
+ * result and also returned by the heartbeat, so the master could limit the
+ * work dispatched to the slave.
+ *
+ * @author yu
+ *
+ */
+public class SlaveStatus implements Serializable {
+	/** version UID by default */
+	private static final long serialVersionUID = 1L;
+
+	/** the slave is overloaded when the free heap is below this ratio */
+	private static final double MIN_FREE_HEAP_RATIO = 0.1;
+
+	/** the number of sub tasks allowed to wait for each worker thread */
+	private static final int QUEUE_PER_THREAD = 20;
+
+	/** the number of sub tasks allowed to wait for each core */
+	private static final int QUEUE_PER_CORE = 200;
+
+	/** the estimated heap of a queued sub task with its request and result */
+	private static final long HEAP_PER_SUB_TASK = 256 * 1024;
+
+	/** service name of the slave */
+	private final String serviceName;
+
+	/** the number of available processors */
+	private final int cores;
+
+	/** the number of worker threads */
+	private final int numThread;
+
+	/**
+	 * the free heap in bytes after the last garbage collection, including the
+	 * heap not yet allocated
+	 */
+	private final long freeHeap;
+
+	/** the max heap in bytes */
+	private final long maxHeap;
+
+	/** the number of sub tasks accepted but not finished */
+	private final int queueDepth;
+
+	/**
+	 * Construct a slave status
+	 *
+	 * @param serviceName
+	 *            the service name
+	 * @param cores
+	 *            the number of cores
+	 * @param numThread
+	 *            the number of worker threads
+	 * @param freeHeap
+	 *            the free heap
+	 * @param maxHeap
+	 *            the max heap
+	 * @param queueDepth
+	 *            the queue depth
+	 */
+	public SlaveStatus(String serviceName, int cores, int numThread, long freeHeap, long maxHeap, int queueDepth) {
+		this.serviceName = serviceName;
+		this.cores = cores;
+		this.numThread = numThread;
+		this.freeHeap = freeHeap;
+		this.maxHeap = maxHeap;
+		this.queueDepth = queueDepth;
+	}
+
+	/**
+	 * Take a snapshot of the current JVM. The used heap is measured after the
+	 * last garbage collection of each pool, so the garbage not collected yet is
+	 * not counted; an idle slave would otherwise look full until the next
+	 * collection, which never comes while it is idle.
+	 *
+	 * @param serviceName
+	 *            the service name
+	 * @param numThread
+	 *            the number of worker threads
+	 * @param queueDepth
+	 *            the queue depth
+	 * @return the status
+	 */
+	public static SlaveStatus snapshot(String serviceName, int numThread, int queueDepth) {
+		Runtime runtime = Runtime.getRuntime();
+		long maxHeap = runtime.maxMemory();
+		long usedHeap = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() != MemoryType.HEAP) {
+				continue;
+			}
+			MemoryUsage usage = pool.getCollectionUsage();
+			usedHeap += usage != null ? usage.getUsed() : pool.getUsage().getUsed();
+		}
+		long freeHeap = maxHeap - usedHeap;
+		return new SlaveStatus(serviceName, runtime.availableProcessors(), numThread, freeHeap, maxHeap,
+				queueDepth);
+	}
+
+	/**
+	 * Getter for service name
+	 *
+	 * @return service name
+	 */
+	public String getServiceName() {
+		return serviceName;
+	}
+
+	/**
+	 * Getter for cores
+	 *
+	 * @return cores
+	 */
+	public int getCores() {
+		return cores;
+	}
+
+	/**
+	 * Getter for the number of worker threads
+	 *
+	 * @return number of threads
+	 */
+	public int getNumThread() {
+		return numThread;
+	}
+
+	/**
+	 * Getter for free heap
+	 *
+	 * @return free heap in bytes
+	 */
+	public long getFreeHeap() {
+		return freeHeap;
+	}
+
+	/**
+	 * Getter for max heap
+	 *
+	 * @return max heap in bytes
+	 */
+	public long getMaxHeap() {
+		return maxHeap;
+	}
+
+	/**
+	 * Getter for queue depth
+	 *
+	 * @return queue depth
+	 */
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * Whether the slave is near its memory limit
+	 *
+	 * @return true if overloaded
+	 */
+	public boolean isOverloaded() {
+		return freeHeap < maxHeap * MIN_FREE_HEAP_RATIO;
+	}
+
+	/**
+	 * The max number of sub tasks the slave accepts at the same time. It is
+	 * limited by the worker threads and the cores, and by the free heap above
+	 * the overload threshold, so a slave with a small heap queues fewer sub
+	 * tasks. The queued sub tasks are already in the used heap, so they are
+	 * added to the heap limit.
+	 *
+	 * @return the limit, at least 1
+	 */
+	public int getQueueLimit() {
+		long cpuLimit = Math.min((long) numThread * QUEUE_PER_THREAD, (long) cores * QUEUE_PER_CORE);
+		long headroom = Math.max(0, freeHeap - (long) (maxHeap * MIN_FREE_HEAP_RATIO));
+		long heapLimit = queueDepth + headroom / HEAP_PER_SUB_TASK;
+		return (int) Math.max(1, Math.min(cpuLimit, heapLimit));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(serviceName).append("(cores: ").append(cores).append(", free heap: ").append(freeHeap >> 20)
+				.append("MB/").append(maxHeap >> 20).append("MB, queue depth: ").append(queueDepth).append(")");
+		return sb.toString();
+	}
+}
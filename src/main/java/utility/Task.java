@@ -1,7 +1,10 @@
 package utility;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -22,6 +25,12 @@ public class Task implements Serializable {
 	 */
 	private final Map<String, String> subTasks;
 
+	/** the broadcast values referenced by the function of this task */
+	private final List<Broadcast> broadcasts;
+
+	/** the load report of the slave which executed this task, if any */
+	private SlaveStatus slaveStatus;
+
 	/**
 	 * Construct a task with the given task name and sub tasks.
 	 * 
@@ -31,11 +40,27 @@ public class Task implements Serializable {
 	 *            the sub tasks
 	 */
 	public Task(String taskName, Map<String, String> subTasks) {
+		this(taskName, subTasks, Collections.<Broadcast>emptyList());
+	}
+
+	/**
+	 * Construct a task with the given task name, sub tasks and broadcast
+	 * handles.
+	 * 
+	 * @param taskName
+	 *            the task name
+	 * @param subTasks
+	 *            the sub tasks
+	 * @param broadcasts
+	 *            the broadcast handles
+	 */
+	public Task(String taskName, Map<String, String> subTasks, List<Broadcast> broadcasts) {
 		if (taskName == null || taskName.length() == 0) {
 			throw new IllegalArgumentException("[ERROR] Construct Task failed as the task name is null or empty.");
 		}
 		this.taskName = taskName;
 		this.subTasks = new LinkedHashMap<String, String>(subTasks);
+		this.broadcasts = new ArrayList<Broadcast>(broadcasts);
 	}
 
 	/**
@@ -56,6 +81,34 @@ public class Task implements Serializable {
 		return this.subTasks;
 	}
 
+	/**
+	 * Get the broadcast handles
+	 * 
+	 * @return broadcasts
+	 */
+	public List<Broadcast> getBroadcasts() {
+		return Collections.unmodifiableList(this.broadcasts);
+	}
+
+	/**
+	 * Get the load report of the slave which executed this task
+	 * 
+	 * @return the status, null if not executed by a slave
+	 */
+	public SlaveStatus getSlaveStatus() {
+		return this.slaveStatus;
+	}
+
+	/**
+	 * Attach the load report of the slave which executed this task
+	 * 
+	 * @param slaveStatus
+	 *            the status
+	 */
+	public void setSlaveStatus(SlaveStatus slaveStatus) {
+		this.slaveStatus = slaveStatus;
+	}
+
 	/**
 	 * Get the size of the subTasks(result)
 	 * 
@@ -81,6 +134,9 @@ public class Task implements Serializable {
 		 */
 		private Map<String, String> builderSubTasks = new LinkedHashMap<String, String>();
 
+		/** the broadcast handles */
+		private List<Broadcast> builderBroadcasts = new ArrayList<Broadcast>();
+
 		/**
 		 * Set the name.
 		 * 
@@ -133,15 +189,33 @@ public class Task implements Serializable {
 			return this;
 		}
 
+		/**
+		 * Reference a broadcast value from the task
+		 * 
+		 * @param broadcast
+		 *            the broadcast handle returned by the master
+		 * @return this
+		 */
+		public Builder addBroadcast(Broadcast broadcast) {
+			if (broadcast == null) {
+				throw new IllegalArgumentException("[ERROR] Broadcast handle is null.");
+			}
+			if (!this.builderBroadcasts.contains(broadcast)) {
+				this.builderBroadcasts.add(broadcast);
+			}
+			return this;
+		}
+
 		/**
 		 * Build the task
 		 * 
 		 * @return task
 		 */
 		public Task build() {
-			Task task = new Task(this.builderTaskName, this.builderSubTasks);
+			Task task = new Task(this.builderTaskName, this.builderSubTasks, this.builderBroadcasts);
 			this.builderTaskName = null;
 			this.builderSubTasks = new LinkedHashMap<String, String>();
+			this.builderBroadcasts = new ArrayList<Broadcast>();
 			return task;
 		}
 
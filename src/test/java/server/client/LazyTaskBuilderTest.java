@@ -0,0 +1,90 @@
+package server.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import utility.Broadcast;
+import utility.Task;
+
+/**
+ * LazyTaskBuilderTest - Tests of {@link LazyTaskBuilder}
+ *
+ * @author yu
+ *
+ */
+public class LazyTaskBuilderTest {
+	@Test
+	public void splitsTheRequestsIntoBatches() {
+		LazyTaskBuilder builder = new LazyTaskBuilder("task", IntStream.range(0, 10).mapToObj(i -> "r" + i), 4);
+		List<Task> tasks = new ArrayList<Task>();
+		while (builder.hasNext()) {
+			tasks.add(builder.next());
+		}
+		assertEquals(3, tasks.size());
+		assertEquals(Arrays.asList("r0", "r1", "r2", "r3"), new ArrayList<String>(tasks.get(0).getSubTasks().keySet()));
+		assertEquals(Arrays.asList("r4", "r5", "r6", "r7"), new ArrayList<String>(tasks.get(1).getSubTasks().keySet()));
+		assertEquals(Arrays.asList("r8", "r9"), new ArrayList<String>(tasks.get(2).getSubTasks().keySet()));
+	}
+
+	@Test
+	public void namesTheTasksByIndex() {
+		LazyTaskBuilder builder = new LazyTaskBuilder("task", Arrays.asList("a", "b", "c").iterator(), 2);
+		assertEquals("task0", builder.next().getTaskName());
+		assertEquals("task1", builder.next().getTaskName());
+	}
+
+	@Test
+	public void addsTheBroadcastsToEveryTask() {
+		Broadcast dict = new Broadcast("dict", "id1");
+		Broadcast model = new Broadcast("model", "id2");
+		LazyTaskBuilder builder = new LazyTaskBuilder("task", Arrays.asList("a", "b", "c").iterator(), 1, dict,
+				model);
+		while (builder.hasNext()) {
+			assertEquals(Arrays.asList(dict, model), builder.next().getBroadcasts());
+		}
+	}
+
+	@Test
+	public void takesTheRequestsOnlyWhenBuilding() {
+		int[] taken = new int[1];
+		Iterator<String> requests = new Iterator<String>() {
+			@Override
+			public boolean hasNext() {
+				return taken[0] < 100;
+			}
+
+			@Override
+			public String next() {
+				return "r" + taken[0]++;
+			}
+		};
+		LazyTaskBuilder builder = new LazyTaskBuilder("task", requests, 10);
+		assertTrue(builder.hasNext());
+		assertEquals(0, taken[0]);
+		builder.next();
+		assertEquals(10, taken[0]);
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void failsAfterTheLastTask() {
+		LazyTaskBuilder builder = new LazyTaskBuilder("task", Arrays.asList("a").iterator(), 2);
+		builder.next();
+		assertFalse(builder.hasNext());
+		builder.next();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNonPositiveBatchSize() {
+		new LazyTaskBuilder("task", Arrays.asList("a").iterator(), 0);
+	}
+}
@@ -0,0 +1,54 @@
+package server.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import utility.Task;
+
+/**
+ * ResultSinkTest - Tests of {@link ResultSink}
+ *
+ * @author yu
+ *
+ */
+public class ResultSinkTest {
+	@Test
+	public void writesOneLineForEachResult() throws IOException {
+		Path path = Files.createTempFile("results", ".txt");
+		try (ResultSink sink = new ResultSink(path)) {
+			sink.write(new Task.Builder().setTaskName("task0").addSubTaskResult("a", "1").addSubTaskResult("b", "2")
+					.build());
+			sink.write(new Task.Builder().setTaskName("task1").addSubTaskResult("c", "3").build());
+		}
+		String n = System.lineSeparator();
+		assertEquals("Request : a, Result: 1" + n + "Request : b, Result: 2" + n + "Request : c, Result: 3" + n,
+				new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void writesNullForMissingResults() throws IOException {
+		Path path = Files.createTempFile("results", ".txt");
+		try (ResultSink sink = new ResultSink(path)) {
+			sink.write(new Task.Builder().setTaskName("task0").addSubTask("a").build());
+		}
+		assertEquals("Request : a, Result: null" + System.lineSeparator(),
+				new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void truncatesAnExistingFile() throws IOException {
+		Path path = Files.createTempFile("results", ".txt");
+		Files.write(path, "old content which is longer".getBytes(StandardCharsets.UTF_8));
+		try (ResultSink sink = new ResultSink(path)) {
+			sink.write(new Task.Builder().setTaskName("task0").addSubTaskResult("a", "1").build());
+		}
+		assertEquals("Request : a, Result: 1" + System.lineSeparator(),
+				new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+	}
+}
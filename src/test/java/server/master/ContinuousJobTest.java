@@ -0,0 +1,185 @@
+package server.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import utility.Broadcast;
+import utility.JobSnapshot;
+import utility.Task;
+
+/**
+ * ContinuousJobTest - Tests of {@link ContinuousJob}
+ *
+ * @author yu
+ *
+ */
+public class ContinuousJobTest {
+	/** the job name */
+	private static final String JOB_NAME = "job";
+
+	@Test
+	public void slicesTheDeltaOfEachVersion() {
+		ContinuousJob job = newJob();
+		job.append(Arrays.asList("a", "b"));
+		job.complete(compute(job.nextMicroBatch(0)));
+		job.append(Arrays.asList("b", "c"));
+		job.complete(compute(job.nextMicroBatch(0)));
+
+		assertEquals(Arrays.asList("a", "b", "c"), requests(job.snapshot(0)));
+		assertEquals(Arrays.asList("c"), requests(job.snapshot(1)));
+		assertTrue(requests(job.snapshot(2)).isEmpty());
+		assertEquals(2, job.snapshot(0).getVersion());
+		assertEquals(1, job.snapshot(1).getFromVersion());
+		// a version from the future is clamped to the current one
+		assertEquals(2, job.snapshot(10).getFromVersion());
+	}
+
+	@Test
+	public void dispatchesAFailedBatchFirstAfterTheBackoff() {
+		ContinuousJob job = newJob();
+		job.append(Arrays.asList("a", "b"));
+		Task failed = job.nextMicroBatch(0);
+		job.append(Arrays.asList("c"));
+		assertTrue(job.fail(failed, "lost", 1000));
+
+		assertNull(job.nextMicroBatch(1000 + ContinuousJob.RETRY_MILLIS - 1));
+		Task retried = job.nextMicroBatch(1000 + ContinuousJob.RETRY_MILLIS);
+		assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<String>(retried.getSubTasks().keySet()));
+		assertEquals(3, job.snapshot(0).getPending());
+	}
+
+	@Test
+	public void doublesTheBackoffAndFailsTheJob() {
+		ContinuousJob job = newJob();
+		job.append(Arrays.asList("a"));
+		long now = 0;
+		for (int i = 1; i < ContinuousJob.MAX_FAILURES; i++) {
+			assertTrue(job.fail(job.nextMicroBatch(now), "lost", now));
+			long backoff = Math.min(ContinuousJob.RETRY_MILLIS << (i - 1), ContinuousJob.MAX_RETRY_MILLIS);
+			assertNull(job.nextMicroBatch(now + backoff - 1));
+			now += backoff;
+		}
+		assertFalse(job.fail(job.nextMicroBatch(now), "lost", now));
+
+		JobSnapshot snapshot = job.snapshot(0);
+		assertTrue(snapshot.isFailed());
+		assertEquals("lost", snapshot.getError());
+		assertEquals(1, snapshot.getPending());
+		assertNull(job.nextMicroBatch(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void resetsTheFailuresAfterASuccess() {
+		ContinuousJob job = newJob();
+		job.append(Arrays.asList("a"));
+		assertTrue(job.fail(job.nextMicroBatch(0), "lost", 0));
+		job.complete(compute(job.nextMicroBatch(ContinuousJob.RETRY_MILLIS)));
+		job.append(Arrays.asList("b"));
+		for (int i = 1; i < ContinuousJob.MAX_FAILURES; i++) {
+			assertTrue(job.fail(job.nextMicroBatch(Long.MAX_VALUE / 2), "lost", 0));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsAppendsAfterFailure() {
+		ContinuousJob job = newJob();
+		job.append(Arrays.asList("a"));
+		for (int i = 0; i < ContinuousJob.MAX_FAILURES; i++) {
+			job.fail(job.nextMicroBatch(Long.MAX_VALUE / 2), "lost", 0);
+		}
+		job.append(Arrays.asList("b"));
+	}
+
+	@Test
+	public void waitsForTheRunningBatchOnClose() throws Exception {
+		ContinuousJob job = newJob();
+		job.append(Arrays.asList("a", "b"));
+		Task running = job.nextMicroBatch(0);
+		job.append(Arrays.asList("c"));
+
+		Thread closer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					job.close();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		closer.start();
+		closer.join(200);
+		assertTrue(closer.isAlive());
+		assertFalse(job.snapshot(0).isClosed());
+		// no new micro batch once closing
+		assertNull(job.nextMicroBatch(Long.MAX_VALUE));
+
+		job.complete(compute(running));
+		closer.join(5000);
+		assertFalse(closer.isAlive());
+
+		JobSnapshot snapshot = job.snapshot(0);
+		assertTrue(snapshot.isClosed());
+		assertEquals(Arrays.asList("a", "b"), requests(snapshot));
+	}
+
+	@Test
+	public void wakesTheSubscriberOnClose() throws Exception {
+		ContinuousJob job = newJob();
+		job.close();
+		JobSnapshot snapshot = job.await(0, 5000);
+		assertTrue(snapshot.isClosed());
+		assertNotNull(snapshot.getResults());
+	}
+
+	/**
+	 * Helper function to create a job without broadcasts
+	 *
+	 * @return the job
+	 */
+	private static ContinuousJob newJob() {
+		return new ContinuousJob(JOB_NAME, Collections.<Broadcast> emptyList());
+	}
+
+	/**
+	 * Helper function to compute the results of a micro batch
+	 *
+	 * @param microBatch
+	 *            the micro batch
+	 * @return the results
+	 */
+	private static Task compute(Task microBatch) {
+		Task.Builder builder = new Task.Builder();
+		builder.setTaskName(microBatch.getTaskName());
+		for (String request : microBatch.getSubTasks().keySet()) {
+			builder.addSubTaskResult(request, "result of " + request);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Helper function to get the requests of the results of a snapshot
+	 *
+	 * @param snapshot
+	 *            the snapshot
+	 * @return the requests in order
+	 */
+	private static ArrayList<String> requests(JobSnapshot snapshot) {
+		ArrayList<String> requests = new ArrayList<String>();
+		for (Map.Entry<String, String> e : snapshot.getResults().getSubTasks().entrySet()) {
+			assertEquals("result of " + e.getKey(), e.getValue());
+			requests.add(e.getKey());
+		}
+		return requests;
+	}
+}
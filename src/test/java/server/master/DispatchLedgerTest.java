@@ -0,0 +1,138 @@
+package server.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import utility.Lease;
+import utility.SlaveStatus;
+
+/**
+ * DispatchLedgerTest - Tests of {@link DispatchLedger}
+ *
+ * @author yu
+ *
+ */
+public class DispatchLedgerTest {
+	/** the slave */
+	private static final String SLAVE = "Slave1";
+
+	/** the max heap of the slave, large enough not to limit the queue */
+	private static final long MAX_HEAP = 1L << 40;
+
+	/** a lease of 500 slots which does not expire in the tests */
+	private static final Lease LEASE = new Lease(SLAVE, "Master", 500, Long.MAX_VALUE / 2, 0);
+
+	@Test
+	public void limitsByLeaseAndQueue() {
+		DispatchLedger<String> ledger = new DispatchLedger<String>();
+		// the queue limit is min(50 * 20, 8 * 200) = 1000, the lease is the limit
+		assertEquals(500, ledger.getCapacity(SLAVE, LEASE, status(8, 0), 0));
+		// 1 core gives a queue limit of 200
+		assertEquals(200, ledger.getCapacity(SLAVE, LEASE, status(1, 0), 0));
+	}
+
+	@Test
+	public void hasNoCapacityWithoutValidLeaseOrWhenOverloaded() {
+		DispatchLedger<String> ledger = new DispatchLedger<String>();
+		assertEquals(0, ledger.getCapacity(SLAVE, null, status(8, 0), 0));
+		Lease expired = new Lease(SLAVE, "Master", 500, 1000, 0);
+		assertEquals(0, ledger.getCapacity(SLAVE, expired, status(8, 0), 1000));
+		SlaveStatus overloaded = new SlaveStatus(SLAVE, 8, 50, MAX_HEAP / 20, MAX_HEAP, 0);
+		assertEquals(0, ledger.getCapacity(SLAVE, LEASE, overloaded, 0));
+	}
+
+	@Test
+	public void reservesAndReleases() {
+		DispatchLedger<String> ledger = new DispatchLedger<String>();
+		ledger.reserve(SLAVE, 300);
+		assertEquals(200, ledger.getCapacity(SLAVE, LEASE, status(8, 0), 0));
+		assertEquals(300, ledger.getTotalInFlight());
+		ledger.release(SLAVE, 300);
+		assertEquals(500, ledger.getCapacity(SLAVE, LEASE, status(8, 0), 0));
+		assertEquals(0, ledger.getTotalInFlight());
+	}
+
+	@Test
+	public void countsTheQueueOfTheOtherMasters() {
+		DispatchLedger<String> ledger = new DispatchLedger<String>();
+		// the other masters keep 900 of the 1000 sub tasks queued
+		assertEquals(100, ledger.getCapacity(SLAVE, LEASE, status(8, 900), 0));
+		// the queue reported after the own sub tasks are admitted counts them
+		// once
+		ledger.reserve(SLAVE, 400);
+		assertEquals(100, ledger.getCapacity(SLAVE, LEASE, status(8, 400), 0));
+	}
+
+	@Test
+	public void neverOverReservesWhenPlannedConcurrently() throws Exception {
+		DispatchLedger<String> ledger = new DispatchLedger<String>();
+		AtomicInteger reserved = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int k = 0; k < 100; k++) {
+						// plan and reserve at once, as the master does
+						synchronized (ledger) {
+							int size = Math.min(7, ledger.getCapacity(SLAVE, LEASE, status(8, 0), 0));
+							ledger.reserve(SLAVE, size);
+							reserved.addAndGet(size);
+						}
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(LEASE.getSlots(), reserved.get());
+		assertEquals(LEASE.getSlots(), ledger.getInFlight(SLAVE));
+	}
+
+	@Test
+	public void releaseWakesTheWaitingTask() throws Exception {
+		DispatchLedger<String> ledger = new DispatchLedger<String>();
+		ledger.reserve(SLAVE, 500);
+		Thread waiter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					ledger.await(10000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		waiter.start();
+		Thread.sleep(100);
+		assertTrue(waiter.isAlive());
+		ledger.release(SLAVE, 500);
+		waiter.join(5000);
+		assertFalse(waiter.isAlive());
+	}
+
+	/**
+	 * Helper function to build the status of a slave with 50 threads and
+	 * plenty of heap
+	 *
+	 * @param cores
+	 *            the number of cores
+	 * @param queueDepth
+	 *            the queue depth
+	 * @return the status
+	 */
+	private static SlaveStatus status(int cores, int queueDepth) {
+		return new SlaveStatus(SLAVE, cores, 50, MAX_HEAP, MAX_HEAP, queueDepth);
+	}
+}
@@ -0,0 +1,137 @@
+package server.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import utility.Broadcast;
+import utility.JobSnapshot;
+import utility.Task;
+
+/**
+ * JobRegistryTest - Tests of {@link JobRegistry}
+ *
+ * @author yu
+ *
+ */
+public class JobRegistryTest {
+	/** the job name */
+	private static final String JOB_NAME = "job";
+
+	/** the retention period used by the tests */
+	private static final long RETENTION_MILLIS = 60000;
+
+	@Test
+	public void subscriberBetweenPollsSeesTheClose() throws Exception {
+		final JobRegistry registry = new JobRegistry(RETENTION_MILLIS);
+		ContinuousJob job = newJob();
+		registry.register(job);
+		job.append(Arrays.asList("a", "b"));
+		Task running = job.nextMicroBatch(0);
+
+		// the subscriber polls before the micro batch finishes
+		JobSnapshot first = registry.get(JOB_NAME).await(0, 0);
+		assertFalse(first.isClosed());
+		long version = first.getVersion();
+
+		Thread closer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					registry.close(JOB_NAME);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		closer.start();
+		job.complete(compute(running));
+		closer.join(5000);
+		assertFalse(closer.isAlive());
+
+		// the subscriber polls again after the job is closed
+		JobSnapshot next = registry.get(JOB_NAME).await(version, 5000);
+		assertTrue(next.isClosed());
+		assertEquals(2, next.getResults().getSize());
+	}
+
+	@Test
+	public void rejectsAnOpenJobOfTheSameName() {
+		JobRegistry registry = new JobRegistry(RETENTION_MILLIS);
+		registry.register(newJob());
+		try {
+			registry.register(newJob());
+			fail("registered twice");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void replacesAClosedJobOfTheSameName() throws Exception {
+		JobRegistry registry = new JobRegistry(RETENTION_MILLIS);
+		ContinuousJob closed = newJob();
+		registry.register(closed);
+		registry.close(JOB_NAME);
+
+		ContinuousJob reopened = newJob();
+		registry.register(reopened);
+		assertSame(reopened, registry.get(JOB_NAME));
+		assertNotSame(closed, registry.get(JOB_NAME));
+	}
+
+	@Test
+	public void removesClosedJobsAfterTheRetention() throws Exception {
+		JobRegistry registry = new JobRegistry(RETENTION_MILLIS);
+		registry.register(newJob());
+		registry.register(new ContinuousJob("open", Collections.<Broadcast> emptyList()));
+		registry.close(JOB_NAME);
+		long closedTime = System.currentTimeMillis();
+
+		registry.removeRetired(closedTime);
+		assertTrue(registry.get(JOB_NAME).isClosed());
+
+		registry.removeRetired(closedTime + RETENTION_MILLIS + 1);
+		assertEquals(1, registry.getJobs().size());
+		assertFalse(registry.get("open").isClosed());
+		try {
+			registry.get(JOB_NAME);
+			fail("retired job is still registered");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Helper function to create a job without broadcasts
+	 *
+	 * @return the job
+	 */
+	private static ContinuousJob newJob() {
+		return new ContinuousJob(JOB_NAME, Collections.<Broadcast> emptyList());
+	}
+
+	/**
+	 * Helper function to compute the results of a micro batch
+	 *
+	 * @param microBatch
+	 *            the micro batch
+	 * @return the results
+	 */
+	private static Task compute(Task microBatch) {
+		Task.Builder builder = new Task.Builder();
+		builder.setTaskName(microBatch.getTaskName());
+		for (String request : microBatch.getSubTasks().keySet()) {
+			builder.addSubTaskResult(request, "result of " + request);
+		}
+		return builder.build();
+	}
+}
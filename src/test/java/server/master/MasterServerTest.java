@@ -0,0 +1,85 @@
+package server.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import server.ServerInfo;
+import utility.ConsistentHash;
+
+/**
+ * MasterServerTest - Tests of the routing of {@link MasterServer}
+ *
+ * @author yu
+ *
+ */
+public class MasterServerTest {
+	/** the first master */
+	private static final ServerInfo MASTER = ServerInfo.parse("Master@127.0.0.1:19091");
+
+	/** the second master */
+	private static final ServerInfo MASTER2 = ServerInfo.parse("Master2@127.0.0.1:19094");
+
+	/** the master only known by the second master */
+	private static final ServerInfo MASTER3 = ServerInfo.parse("Master3@127.0.0.1:19095");
+
+	/** the ring of the first master */
+	private static final ConsistentHash<ServerInfo> RING = new ConsistentHash<ServerInfo>(
+			Arrays.asList(MASTER, MASTER2));
+
+	@Test
+	public void keepsTheOwnNames() {
+		String name = findName(RING, MASTER);
+		assertNull(MasterServer.route(RING, MASTER, name, false));
+		assertNull(MasterServer.route(RING, MASTER, name, true));
+	}
+
+	@Test
+	public void forwardsTheOtherNamesOnce() {
+		String name = findName(RING, MASTER2);
+		assertEquals(MASTER2, MasterServer.route(RING, MASTER, name, false));
+		// the owner keeps the forwarded call
+		assertNull(MasterServer.route(RING, MASTER2, name, true));
+	}
+
+	@Test
+	public void failsOnRingMismatch() {
+		// the second master was started with a third peer
+		ConsistentHash<ServerInfo> ring2 = new ConsistentHash<ServerInfo>(Arrays.asList(MASTER, MASTER2, MASTER3));
+		String name = null;
+		for (int i = 0; name == null; i++) {
+			if (RING.get("task" + i).equals(MASTER2) && ring2.get("task" + i).equals(MASTER3)) {
+				name = "task" + i;
+			}
+		}
+		assertEquals(MASTER2, MasterServer.route(RING, MASTER, name, false));
+		try {
+			MasterServer.route(ring2, MASTER2, name, true);
+			fail("the forwarded call should not be forwarded again");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("ring mismatch"));
+		}
+	}
+
+	/**
+	 * Helper function to find a name routed to the master
+	 *
+	 * @param ring
+	 *            the ring
+	 * @param owner
+	 *            the master
+	 * @return the name
+	 */
+	private static String findName(ConsistentHash<ServerInfo> ring, ServerInfo owner) {
+		for (int i = 0;; i++) {
+			if (ring.get("task" + i).equals(owner)) {
+				return "task" + i;
+			}
+		}
+	}
+}
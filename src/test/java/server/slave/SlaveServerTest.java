@@ -0,0 +1,176 @@
+package server.slave;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import utility.Lease;
+import utility.SlaveStatus;
+
+/**
+ * SlaveServerTest - Tests of the admission control and the leases of
+ * {@link SlaveServer}
+ *
+ * @author yu
+ *
+ */
+public class SlaveServerTest {
+	/** the max heap reported by the slave */
+	private static final long MAX_HEAP = 1L << 40;
+
+	/** the queue limit of the slave with 1 core */
+	private static final int QUEUE_LIMIT = 200;
+
+	/** the duration of the leases which do not expire in the tests */
+	private static final long LEASE_MILLIS = 60000;
+
+	/** the free heap reported by the slave */
+	private volatile long freeHeap;
+
+	/** the slave */
+	private SlaveServer slaveServer;
+
+	@Before
+	public void setUp() throws IOException {
+		freeHeap = MAX_HEAP;
+		String rootPath = Files.createTempDirectory("slave").toString();
+		slaveServer = new SlaveServer("Slave1", "127.0.0.1", 19092, rootPath) {
+			@Override
+			public SlaveStatus getStatus() {
+				// 1 core and the free heap of the test, with the real queue
+				SlaveStatus status = super.getStatus();
+				return new SlaveStatus(status.getServiceName(), 1, status.getNumThread(), freeHeap, MAX_HEAP,
+						status.getQueueDepth());
+			}
+		};
+	}
+
+	@Test
+	public void admitsAnOversizedBatchWhenIdle() throws Exception {
+		long start = System.currentTimeMillis();
+		slaveServer.admit(QUEUE_LIMIT * 10);
+		assertTrue(System.currentTimeMillis() - start < SlaveServer.DEFER_MILLIS);
+		slaveServer.release(QUEUE_LIMIT * 10);
+	}
+
+	@Test
+	public void rejectsAfterDeferring() throws Exception {
+		slaveServer.admit(QUEUE_LIMIT);
+		long start = System.currentTimeMillis();
+		try {
+			slaveServer.admit(1);
+			fail("the full slave should reject the batch");
+		} catch (SlaveOverloadedException e) {
+			assertTrue(System.currentTimeMillis() - start >= SlaveServer.DEFER_MILLIS);
+			assertTrue(e.getStatus().getQueueDepth() == QUEUE_LIMIT);
+		}
+	}
+
+	@Test
+	public void rejectsWhenOverloadedEvenIfIdle() throws Exception {
+		freeHeap = MAX_HEAP / 20;
+		try {
+			slaveServer.admit(1);
+			fail("the overloaded slave should reject the batch");
+		} catch (SlaveOverloadedException e) {
+			assertTrue(e.getStatus().isOverloaded());
+		}
+	}
+
+	@Test
+	public void releaseWakesTheDeferredBatch() throws Exception {
+		slaveServer.admit(QUEUE_LIMIT);
+		long[] admitted = new long[1];
+		Thread deferred = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					slaveServer.admit(1);
+					admitted[0] = System.currentTimeMillis();
+				} catch (SlaveOverloadedException e) {
+					admitted[0] = -1;
+				}
+			}
+		});
+		deferred.start();
+		Thread.sleep(200);
+		assertTrue(deferred.isAlive());
+		long released = System.currentTimeMillis();
+		slaveServer.release(QUEUE_LIMIT);
+		deferred.join(SlaveServer.DEFER_MILLIS);
+		assertFalse(deferred.isAlive());
+		assertTrue(admitted[0] >= released);
+		assertTrue(admitted[0] - released < SlaveServer.DEFER_MILLIS / 2);
+	}
+
+	@Test
+	public void grantsTheWholeQueueToOneLessee() {
+		assertEquals(QUEUE_LIMIT, acquire("Master", QUEUE_LIMIT));
+		// never more than requested
+		assertEquals(50, acquire("Master", 50));
+	}
+
+	@Test
+	public void grantsAFairShareToTheSecondLessee() {
+		assertEquals(QUEUE_LIMIT, acquire("Master", QUEUE_LIMIT));
+		assertEquals(QUEUE_LIMIT / 2, acquire("Master2", QUEUE_LIMIT));
+		// the over-grant shrinks to the fair share when renewed
+		assertEquals(QUEUE_LIMIT / 2, acquire("Master", QUEUE_LIMIT));
+		assertEquals(QUEUE_LIMIT / 2, acquire("Master2", QUEUE_LIMIT));
+	}
+
+	@Test
+	public void grantsAFairShareToThreeLessees() {
+		int share = (QUEUE_LIMIT + 2) / 3;
+		assertEquals(QUEUE_LIMIT, acquire("Master", QUEUE_LIMIT));
+		assertEquals(QUEUE_LIMIT / 2, acquire("Master2", QUEUE_LIMIT));
+		assertEquals(share, acquire("Master3", QUEUE_LIMIT));
+		assertEquals(share, acquire("Master", QUEUE_LIMIT));
+		assertEquals(share, acquire("Master2", QUEUE_LIMIT));
+		assertEquals(share, acquire("Master3", QUEUE_LIMIT));
+	}
+
+	@Test
+	public void grantsTheFreeSlotsAboveTheFairShare() {
+		assertEquals(50, acquire("Master", 50));
+		assertEquals(QUEUE_LIMIT - 50, acquire("Master2", QUEUE_LIMIT));
+	}
+
+	@Test
+	public void dropsTheExpiredLessees() throws Exception {
+		Lease lease = slaveServer.acquireLease("Master", QUEUE_LIMIT, 1);
+		assertEquals(QUEUE_LIMIT, lease.getSlots());
+		Thread.sleep(10);
+		// the crashed master did not renew, its share is granted again
+		assertEquals(QUEUE_LIMIT, acquire("Master2", QUEUE_LIMIT));
+		assertEquals(QUEUE_LIMIT / 2, acquire("Master", QUEUE_LIMIT));
+	}
+
+	@Test
+	public void grantsTheReleasedShare() {
+		assertEquals(QUEUE_LIMIT, acquire("Master", QUEUE_LIMIT));
+		assertEquals(QUEUE_LIMIT / 2, acquire("Master2", QUEUE_LIMIT));
+		slaveServer.releaseLease("Master2");
+		assertEquals(QUEUE_LIMIT, acquire("Master", QUEUE_LIMIT));
+	}
+
+	/**
+	 * Helper function to acquire a lease which does not expire in the test
+	 *
+	 * @param masterName
+	 *            the master
+	 * @param slots
+	 *            the requested slots
+	 * @return the granted slots
+	 */
+	private int acquire(String masterName, int slots) {
+		return slaveServer.acquireLease(masterName, slots, LEASE_MILLIS).getSlots();
+	}
+}
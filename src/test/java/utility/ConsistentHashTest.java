@@ -0,0 +1,68 @@
+package utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * ConsistentHashTest - Tests of {@link ConsistentHash}
+ *
+ * @author yu
+ *
+ */
+public class ConsistentHashTest {
+	/** the nodes of the ring */
+	private static final List<String> NODES = Arrays.asList("Master@127.0.0.1:19091", "Master2@127.0.0.1:19094",
+			"Master3@127.0.0.1:19095");
+
+	/** the number of keys to route */
+	private static final int KEY_NUM = 1000;
+
+	@Test
+	public void routesTheSameRegardlessOfNodeOrder() {
+		List<String> reversed = new ArrayList<String>(NODES);
+		Collections.reverse(reversed);
+		ConsistentHash<String> ring = new ConsistentHash<String>(NODES);
+		ConsistentHash<String> reversedRing = new ConsistentHash<String>(reversed);
+		for (int i = 0; i < KEY_NUM; i++) {
+			assertEquals(ring.get("task" + i), reversedRing.get("task" + i));
+		}
+	}
+
+	@Test
+	public void routesEveryNodeSomeKeys() {
+		ConsistentHash<String> ring = new ConsistentHash<String>(NODES);
+		Set<String> used = new HashSet<String>();
+		for (int i = 0; i < KEY_NUM; i++) {
+			used.add(ring.get("task" + i));
+		}
+		assertEquals(new HashSet<String>(NODES), used);
+	}
+
+	@Test
+	public void movesOnlyTheKeysOfARemovedNode() {
+		ConsistentHash<String> ring = new ConsistentHash<String>(NODES);
+		ConsistentHash<String> smallerRing = new ConsistentHash<String>(NODES.subList(0, 2));
+		for (int i = 0; i < KEY_NUM; i++) {
+			String owner = ring.get("task" + i);
+			if (!owner.equals(NODES.get(2))) {
+				assertEquals(owner, smallerRing.get("task" + i));
+			}
+		}
+	}
+
+	@Test
+	public void keepsTheNodes() {
+		ConsistentHash<String> ring = new ConsistentHash<String>(NODES);
+		assertEquals(NODES.size(), ring.getNodes().size());
+		assertTrue(ring.getNodes().containsAll(NODES));
+	}
+}
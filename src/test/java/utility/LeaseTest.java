@@ -0,0 +1,35 @@
+package utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * LeaseTest - Tests of {@link Lease}
+ *
+ * @author yu
+ *
+ */
+public class LeaseTest {
+	@Test
+	public void expiresAfterTheDuration() {
+		Lease lease = new Lease("Slave1", "Master", 500, 1000, 5000);
+		assertEquals(6000, lease.getExpireTime());
+		assertFalse(lease.isExpired(5999));
+		assertTrue(lease.isExpired(6000));
+	}
+
+	@Test
+	public void restartsOnAnotherClock() {
+		// the slave clock is far ahead of the master clock
+		Lease granted = new Lease("Slave1", "Master", 500, 1000, 1000000);
+		Lease restarted = granted.restart(5000);
+		assertEquals(6000, restarted.getExpireTime());
+		assertEquals(granted.getSlots(), restarted.getSlots());
+		assertEquals(granted.getDurationMillis(), restarted.getDurationMillis());
+		assertEquals(granted.getSlaveName(), restarted.getSlaveName());
+		assertEquals(granted.getMasterName(), restarted.getMasterName());
+	}
+}
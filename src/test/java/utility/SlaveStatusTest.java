@@ -0,0 +1,42 @@
+package utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * SlaveStatusTest - Tests of {@link SlaveStatus}
+ *
+ * @author yu
+ *
+ */
+public class SlaveStatusTest {
+	/** one megabyte */
+	private static final long MB = 1024 * 1024;
+
+	@Test
+	public void limitsTheQueueByThreadsAndCores() {
+		assertEquals(1000, new SlaveStatus("Slave1", 8, 50, 8192 * MB, 8192 * MB, 0).getQueueLimit());
+		assertEquals(200, new SlaveStatus("Slave1", 1, 50, 8192 * MB, 8192 * MB, 0).getQueueLimit());
+	}
+
+	@Test
+	public void limitsTheQueueOfASmallHeap() {
+		// 64MB with 6.4MB kept free leaves room for about 230 sub tasks
+		SlaveStatus small = new SlaveStatus("Slave1", 8, 50, 64 * MB, 64 * MB, 0);
+		assertEquals(230, small.getQueueLimit());
+		// the queued sub tasks are already in the used heap
+		SlaveStatus busy = new SlaveStatus("Slave1", 8, 50, 32 * MB, 64 * MB, 100);
+		assertEquals(100 + 102, busy.getQueueLimit());
+	}
+
+	@Test
+	public void keepsRoomForOneBatchWhenNearlyFull() {
+		SlaveStatus full = new SlaveStatus("Slave1", 8, 50, 6 * MB, 64 * MB, 0);
+		assertTrue(full.isOverloaded());
+		assertEquals(1, full.getQueueLimit());
+		assertFalse(new SlaveStatus("Slave1", 8, 50, 7 * MB, 64 * MB, 0).isOverloaded());
+	}
+}